@@ -1,19 +1,41 @@
 package com.mygdx.hiddenmarble.android;
 
+import android.app.ActivityManager;
+import android.content.Context;
 import android.os.Bundle;
 
 import com.badlogic.gdx.backends.android.AndroidApplication;
 import com.badlogic.gdx.backends.android.AndroidApplicationConfiguration;
 import com.badlogic.gdx.backends.android.AndroidGraphics;
+import com.mygdx.hiddenmarble.ui.GameConfig;
 import com.mygdx.hiddenmarble.ui.HiddenMarble;
 
 public class AndroidLauncher extends AndroidApplication {
+    /** Devices with at most this much heap per app (MB) are low on memory. */
+    private static final int LOW_MEMORY_CLASS = 32;
+    
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         AndroidApplicationConfiguration config = new AndroidApplicationConfiguration();
         config.useCompass = false;
-        initialize(new HiddenMarble(), config);
+        
+        GameConfig gameConfig = new GameConfig();
+        ActivityManager activityManager =
+                (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager.getMemoryClass() <= LOW_MEMORY_CLASS) {
+            gameConfig.textureBudget = 1024 * 1024;
+        }
+        
+        /*
+         * Profiling on a device without a keyboard:
+         *   adb shell am start --ez perfHud true
+         *       -n com.mygdx.hiddenmarble.android/.AndroidLauncher
+         * Samples are written to local storage each time the app is paused.
+         */
+        gameConfig.perfHud = getIntent().getBooleanExtra("perfHud", false);
+        gameConfig.perfDumpOnPause = gameConfig.perfHud;
+        initialize(new HiddenMarble(gameConfig), config);
         ((AndroidGraphics)getGraphics()).getView().setKeepScreenOn(true);
     }
 }
@@ -0,0 +1,80 @@
+package com.mygdx.hiddenmarble.benchmarks;
+
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.BOX2D_SCALE;
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.HEIGHT;
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.WIDTH;
+
+import java.lang.management.ManagementFactory;
+
+import com.badlogic.gdx.math.Vector2;
+import com.mygdx.hiddenmarble.ui.WorldRenderer;
+import com.mygdx.hiddenmarble.utils.MazeHelper;
+import com.mygdx.hiddenmarble.world.GameWorld;
+import com.mygdx.hiddenmarble.world.GameWorldAdapter;
+import com.mygdx.hiddenmarble.world.HeadlessSimulation;
+
+/**
+ * Fails if a steady-state frame allocates. Each frame steps the world under
+ * scripted gravity and renders the revealed maze sprite by sprite into a
+ * batch that draws nothing. Allocations are read from the JVM's per-thread
+ * counters, so this needs a HotSpot-based JVM.
+ * <p>
+ * Exits with status 1 if anything was allocated after the warm-up, which
+ * makes it usable as a build check.
+ */
+public class AllocationCheck {
+    private static final float FRAME_DELTA = 1.0f / 60.0f;
+    private static final int WARMUP_FRAMES = 20000;
+    private static final int FRAMES = 5000;
+    
+    private AllocationCheck() {
+    }
+    
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        
+        MockBackend.init();
+        GameWorld world = new GameWorld(WIDTH * BOX2D_SCALE,
+                HEIGHT * BOX2D_SCALE, MazeHelper.getMaze(7, 8, 1L));
+        world.addListener(new GameWorldAdapter() {
+        });
+        WorldRenderer renderer = new WorldRenderer(world);
+        renderer.setBaked(false); // Sprite by sprite is the path to watch.
+        renderer.setRevealed(true, 0.0f);
+        NullBatch batch = new NullBatch();
+        Vector2 gravity = new Vector2();
+        
+        for (int i = 0; i < WARMUP_FRAMES; ++i) {
+            frame(world, renderer, batch, gravity);
+        }
+        
+        /* Reading the counter may allocate a little itself. */
+        long overhead = threads.getThreadAllocatedBytes(thread);
+        long before = threads.getThreadAllocatedBytes(thread);
+        overhead = before - overhead;
+        for (int i = 0; i < FRAMES; ++i) {
+            frame(world, renderer, batch, gravity);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+        
+        world.dispose();
+        System.out.println(FRAMES + " frames, " + batch.draws + " draws, "
+                + allocated + " bytes allocated");
+        if (allocated > 0) {
+            System.out.println("Steady-state frames allocate");
+            System.exit(1);
+        }
+    }
+    
+    private static void frame(GameWorld world, WorldRenderer renderer,
+            NullBatch batch, Vector2 gravity) {
+        
+        HeadlessSimulation.CIRCLE.getGravity(world.getStepCount(), gravity);
+        world.update(FRAME_DELTA, gravity);
+        batch.begin();
+        renderer.render(FRAME_DELTA, batch, world.getMarbleRenderPosition());
+        batch.end();
+    }
+}
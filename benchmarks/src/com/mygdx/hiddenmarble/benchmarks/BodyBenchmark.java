@@ -0,0 +1,61 @@
+package com.mygdx.hiddenmarble.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.World;
+import com.mygdx.hiddenmarble.utils.BodyHelper;
+import com.mygdx.hiddenmarble.utils.MazeHelper;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeDef;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeSize;
+
+/**
+ * Building the maze box body, as done on every new game. The body is
+ * destroyed again within the measurement so the world doesn't grow.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BodyBenchmark {
+    @Param({ "SMALL", "MEDIUM", "LARGE" })
+    public String size;
+    
+    private World world;
+    private MazeDef mazeDef;
+    
+    @Setup
+    public void setUp() {
+        MazeSize mazeSize = MazeSize.valueOf(size);
+        world = new World(new Vector2(), true);
+        mazeDef = MazeHelper.getMaze(mazeSize.width, mazeSize.height, 1L);
+        mazeDef.getWallRectangles(); // Cached; the pool precomputes it too.
+    }
+    
+    @TearDown
+    public void tearDown() {
+        world.dispose();
+    }
+    
+    @Benchmark
+    public void getMazeBoxBody() {
+        Body body = BodyHelper.getMazeBoxBody(world, mazeDef);
+        world.destroyBody(body);
+    }
+}
@@ -0,0 +1,216 @@
+package com.mygdx.hiddenmarble.benchmarks;
+
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.ACCEL_MULTIPLIER;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.math.Vector2;
+import com.mygdx.hiddenmarble.ui.GameConfig;
+import com.mygdx.hiddenmarble.ui.GameScreen;
+import com.mygdx.hiddenmarble.ui.HiddenMarble;
+import com.mygdx.hiddenmarble.utils.Assets;
+import com.mygdx.hiddenmarble.utils.SaveState;
+import com.mygdx.hiddenmarble.world.GravityScript;
+import com.mygdx.hiddenmarble.world.HeadlessSimulation;
+
+/**
+ * Runs the whole game on the headless backend with a no-op GL and measures
+ * how long each {@link GameScreen#render} call takes. The accelerometer
+ * follows a scripted trace and every frame is given the same delta, so runs
+ * of different builds on the same machine are comparable.
+ * <p>
+ * The report lists the frame time percentiles, a frame time histogram and
+ * the number of physics steps per frame. Run it from the assets directory.
+ */
+public class FrameTimeHarness extends ApplicationAdapter {
+    /** The frame delta handed to the screen, as on a 60 Hz display. */
+    private static final float FRAME_DELTA = 1.0f / 60.0f;
+    /** Frames run before measuring, so the JIT has settled. */
+    private static final int WARMUP_FRAMES = 1000;
+    /** The width of a histogram bucket in milliseconds. */
+    private static final double BUCKET_MS = 0.25;
+
+    private final GameConfig config;
+    private final GravityScript script;
+    private final int frames;
+    private final String reportPath;
+    private final Vector2 accel;
+
+    private HiddenMarble game;
+
+    /**
+     * Creates a harness.
+     *
+     * @param  config the game options
+     * @param  script the accelerometer trace, indexed by frame
+     * @param  frames the number of frames to measure
+     * @param  reportPath where to write the report
+     * @throws IllegalArgumentException if frames is not positive
+     */
+    public FrameTimeHarness(GameConfig config, GravityScript script,
+            int frames, String reportPath) {
+
+        if (frames <= 0) {
+            throw new IllegalArgumentException("Non-positive frame count");
+        }
+        this.config = config;
+        this.script = script;
+        this.frames = frames;
+        this.reportPath = reportPath;
+        accel = new Vector2();
+    }
+
+    @Override
+    public void create() {
+        MockBackend.installGL();
+        Gdx.input = scriptedInput(Gdx.input);
+
+        new SaveState(config.saveName).erase(); // Always starts a new game.
+        game = new HiddenMarble(config);
+        game.create();
+        while (!(game.getScreen() instanceof GameScreen)
+                || !Assets.isAudioLoaded()) {
+
+            game.render(); // Loads the assets.
+        }
+        GameScreen screen = (GameScreen) game.getScreen();
+
+        long[] times = new long[frames];
+        int[] steps = new int[frames];
+        for (int i = -WARMUP_FRAMES; i < frames; ++i) {
+            script.getGravity(i + WARMUP_FRAMES, accel);
+            accel.scl(1.0f / ACCEL_MULTIPLIER);
+
+            long stepCount = screen.getStepCount();
+            long begin = System.nanoTime();
+            screen.render(FRAME_DELTA);
+            long elapsed = System.nanoTime() - begin;
+            if (i >= 0) {
+                times[i] = elapsed;
+                steps[i] = (int) Math.max(0L, screen.getStepCount() - stepCount);
+            }
+        }
+
+        Gdx.files.absolute(reportPath).writeString(report(times, steps), false);
+        System.out.println("Wrote " + reportPath);
+        Gdx.app.exit();
+    }
+
+    @Override
+    public void dispose() {
+        if (game != null) {
+            game.dispose();
+        }
+    }
+
+    /** Wraps the backend's input so the accelerometer reads the trace. */
+    private Input scriptedInput(final Input input) {
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+                    throws Throwable {
+
+                String name = method.getName();
+                if (name.equals("getAccelerometerX")) {
+                    return accel.x;
+                } else if (name.equals("getAccelerometerY")) {
+                    return accel.y;
+                } else if (name.equals("getAccelerometerZ")) {
+                    return 0.0f;
+                }
+                try {
+                    return method.invoke(input, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (Input) Proxy.newProxyInstance(Input.class.getClassLoader(),
+                new Class<?>[] { Input.class }, handler);
+    }
+
+    private String report(long[] times, int[] steps) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        long totalSteps = 0;
+        int maxSteps = 0;
+        for (int s : steps) {
+            totalSteps += s;
+            maxSteps = Math.max(maxSteps, s);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("frames ").append(frames).append('\n');
+        sb.append("physics_rate ").append(config.physicsRate).append('\n');
+        sb.append("physics_thread ").append(config.physicsThread).append('\n');
+        sb.append("p50_ms ").append(millis(percentile(sorted, 50))).append('\n');
+        sb.append("p95_ms ").append(millis(percentile(sorted, 95))).append('\n');
+        sb.append("p99_ms ").append(millis(percentile(sorted, 99))).append('\n');
+        sb.append("max_ms ").append(millis(sorted[frames - 1])).append('\n');
+        sb.append("mean_steps_per_frame ")
+        .append((double) totalSteps / frames).append('\n');
+
+        sb.append("# frame time histogram: bucket upper bound (ms), frames\n");
+        int[] buckets = new int[(int) (millis(sorted[frames - 1]) / BUCKET_MS) + 1];
+        for (long t : times) {
+            ++buckets[(int) (millis(t) / BUCKET_MS)];
+        }
+        for (int i = 0; i < buckets.length; ++i) {
+            if (buckets[i] > 0) {
+                sb.append((i + 1) * BUCKET_MS).append(' ')
+                .append(buckets[i]).append('\n');
+            }
+        }
+
+        sb.append("# physics steps per frame: steps, frames\n");
+        int[] stepCounts = new int[maxSteps + 1];
+        for (int s : steps) {
+            ++stepCounts[s];
+        }
+        for (int i = 0; i < stepCounts.length; ++i) {
+            if (stepCounts[i] > 0) {
+                sb.append(i).append(' ').append(stepCounts[i]).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Nearest-rank percentile of sorted values. */
+    private static long percentile(long[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Arguments (all optional): the number of frames (default 5000), the
+     * report file (default frametimes.txt) and "threaded" to step the physics
+     * on its own thread.
+     */
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        String report = args.length > 1 ? args[1] : "frametimes.txt";
+
+        GameConfig config = new GameConfig();
+        config.saveName = ".hidden_marble_harness";
+        config.physicsThread = args.length > 2 && args[2].equals("threaded");
+
+        FrameTimeHarness harness = new FrameTimeHarness(config,
+                HeadlessSimulation.CIRCLE, frames,
+                new File(report).getAbsolutePath());
+        new HeadlessApplication(harness, new HeadlessApplicationConfiguration());
+    }
+}
@@ -0,0 +1,52 @@
+package com.mygdx.hiddenmarble.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mygdx.hiddenmarble.utils.MazeHelper;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeDef;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeSize;
+
+/** Maze generation at each size, with and without the wall layout. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MazeBenchmark {
+    @Param({ "SMALL", "MEDIUM", "LARGE" })
+    public String size;
+    
+    private MazeSize mazeSize;
+    private long seed;
+    
+    @Setup
+    public void setUp() {
+        mazeSize = MazeSize.valueOf(size);
+    }
+    
+    /** Generates the tiles only. */
+    @Benchmark
+    public MazeDef generate() {
+        return MazeHelper.getMaze(mazeSize.width, mazeSize.height, seed++);
+    }
+    
+    /** Generates the tiles and merges the walls into rectangles. */
+    @Benchmark
+    public Object generateWithWalls() {
+        MazeDef mazeDef = MazeHelper.getMaze(mazeSize.width, mazeSize.height, seed++);
+        return mazeDef.getWallRectangles();
+    }
+}
@@ -0,0 +1,106 @@
+package com.mygdx.hiddenmarble.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.IntBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.mygdx.hiddenmarble.utils.Assets;
+
+/**
+ * Stands in for the graphics backend so rendering code can run without a
+ * window or GPU. GL calls do nothing and return zero, except that shaders
+ * always compile and link.
+ */
+final class MockBackend {
+    private static boolean initialized;
+    
+    private MockBackend() {
+    }
+    
+    /**
+     * Loads the natives, installs a no-op GL and fills the textures in
+     * {@link Assets} with a 1x1 placeholder region. Sounds are left unset.
+     */
+    static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        GdxNativesLoader.load();
+        installGL();
+        
+        Texture texture = new Texture(new Pixmap(1, 1, Format.RGBA8888));
+        TextureRegion region = new TextureRegion(texture);
+        Assets.bg = region;
+        Assets.cover = region;
+        Assets.marble = region;
+        Assets.wall = region;
+        Assets.back = region;
+        Assets.corners = region;
+        Assets.exit = region;
+        initialized = true;
+    }
+    
+    /** Replaces the current GL with one that does nothing. */
+    static void installGL() {
+        Gdx.gl = Gdx.gl20 = mock(GL20.class, new GLRecorder());
+    }
+    
+    /** Creates an implementation of an interface backed by a recorder. */
+    static <T> T mock(Class<T> type, Recorder recorder) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(),
+                new Class<?>[] { type }, recorder);
+        return type.cast(proxy);
+    }
+    
+    /** Counts calls and returns zero, false or null. */
+    static class Recorder implements InvocationHandler {
+        int calls;
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            ++calls;
+            Class<?> type = method.getReturnType();
+            if (!type.isPrimitive() || type == void.class) {
+                return null;
+            } else if (type == boolean.class) {
+                return Boolean.FALSE;
+            } else if (type == float.class) {
+                return 0.0f;
+            } else if (type == double.class) {
+                return 0.0;
+            } else if (type == long.class) {
+                return 0L;
+            } else if (type == char.class) {
+                return '\0';
+            } else if (type == byte.class) {
+                return (byte) 0;
+            } else if (type == short.class) {
+                return (short) 0;
+            }
+            return 0;
+        }
+    }
+    
+    /** Reports success for shader compile and link status queries. */
+    static class GLRecorder extends Recorder {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("glGetShaderiv") || name.equals("glGetProgramiv")) {
+                int pname = (Integer) args[1];
+                boolean ok = pname == GL20.GL_COMPILE_STATUS
+                        || pname == GL20.GL_LINK_STATUS;
+                ((IntBuffer) args[2]).put(0, ok ? 1 : 0);
+            }
+            return super.invoke(proxy, method, args);
+        }
+    }
+}
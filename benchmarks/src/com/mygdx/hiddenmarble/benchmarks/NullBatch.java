@@ -0,0 +1,193 @@
+package com.mygdx.hiddenmarble.benchmarks;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.NumberUtils;
+
+/**
+ * A batch that draws nothing and only counts draw calls. Unlike a proxy it
+ * allocates nothing per call, so it can stand in during allocation checks.
+ */
+class NullBatch implements Batch {
+    private final Color color = new Color(Color.WHITE);
+    private final Matrix4 projection = new Matrix4();
+    private final Matrix4 transform = new Matrix4();
+    private boolean drawing;
+    private boolean blending = true;
+    private int blendSrc = -1;
+    private int blendDst = -1;
+    int draws;
+
+    @Override
+    public void begin() {
+        drawing = true;
+    }
+
+    @Override
+    public void end() {
+        drawing = false;
+    }
+
+    @Override
+    public void setColor(Color tint) {
+        color.set(tint);
+    }
+
+    @Override
+    public void setColor(float r, float g, float b, float a) {
+        color.set(r, g, b, a);
+    }
+
+    @Override
+    public void setColor(float color) {
+        int bits = NumberUtils.floatToIntColor(color);
+        this.color.set((bits & 0xff) / 255.0f, (bits >>> 8 & 0xff) / 255.0f,
+                (bits >>> 16 & 0xff) / 255.0f, (bits >>> 24 & 0xff) / 255.0f);
+    }
+
+    @Override
+    public Color getColor() {
+        return color;
+    }
+
+    @Override
+    public void draw(Texture texture, float x, float y, float originX,
+            float originY, float width, float height, float scaleX,
+            float scaleY, float rotation, int srcX, int srcY, int srcWidth,
+            int srcHeight, boolean flipX, boolean flipY) {
+        ++draws;
+    }
+
+    @Override
+    public void draw(Texture texture, float x, float y, float width,
+            float height, int srcX, int srcY, int srcWidth, int srcHeight,
+            boolean flipX, boolean flipY) {
+        ++draws;
+    }
+
+    @Override
+    public void draw(Texture texture, float x, float y, int srcX, int srcY,
+            int srcWidth, int srcHeight) {
+        ++draws;
+    }
+
+    @Override
+    public void draw(Texture texture, float x, float y, float width,
+            float height, float u, float v, float u2, float v2) {
+        ++draws;
+    }
+
+    @Override
+    public void draw(Texture texture, float x, float y) {
+        ++draws;
+    }
+
+    @Override
+    public void draw(Texture texture, float x, float y, float width,
+            float height) {
+        ++draws;
+    }
+
+    @Override
+    public void draw(Texture texture, float[] spriteVertices, int offset,
+            int count) {
+        ++draws;
+    }
+
+    @Override
+    public void draw(TextureRegion region, float x, float y) {
+        ++draws;
+    }
+
+    @Override
+    public void draw(TextureRegion region, float x, float y, float width,
+            float height) {
+        ++draws;
+    }
+
+    @Override
+    public void draw(TextureRegion region, float x, float y, float originX,
+            float originY, float width, float height, float scaleX,
+            float scaleY, float rotation) {
+        ++draws;
+    }
+
+    @Override
+    public void draw(TextureRegion region, float x, float y, float originX,
+            float originY, float width, float height, float scaleX,
+            float scaleY, float rotation, boolean clockwise) {
+        ++draws;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void disableBlending() {
+        blending = false;
+    }
+
+    @Override
+    public void enableBlending() {
+        blending = true;
+    }
+
+    @Override
+    public void setBlendFunction(int srcFunc, int dstFunc) {
+        blendSrc = srcFunc;
+        blendDst = dstFunc;
+    }
+
+    @Override
+    public int getBlendSrcFunc() {
+        return blendSrc;
+    }
+
+    @Override
+    public int getBlendDstFunc() {
+        return blendDst;
+    }
+
+    @Override
+    public Matrix4 getProjectionMatrix() {
+        return projection;
+    }
+
+    @Override
+    public Matrix4 getTransformMatrix() {
+        return transform;
+    }
+
+    @Override
+    public void setProjectionMatrix(Matrix4 projection) {
+        this.projection.set(projection);
+    }
+
+    @Override
+    public void setTransformMatrix(Matrix4 transform) {
+        this.transform.set(transform);
+    }
+
+    @Override
+    public void setShader(ShaderProgram shader) {
+    }
+
+    @Override
+    public boolean isBlendingEnabled() {
+        return blending;
+    }
+
+    @Override
+    public boolean isDrawing() {
+        return drawing;
+    }
+
+    @Override
+    public void dispose() {
+    }
+}
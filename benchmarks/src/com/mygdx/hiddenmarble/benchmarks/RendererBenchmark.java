@@ -0,0 +1,77 @@
+package com.mygdx.hiddenmarble.benchmarks;
+
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.BOX2D_SCALE;
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.HEIGHT;
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.WIDTH;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.math.Vector2;
+import com.mygdx.hiddenmarble.benchmarks.MockBackend.Recorder;
+import com.mygdx.hiddenmarble.ui.WorldRenderer;
+import com.mygdx.hiddenmarble.utils.MazeHelper;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeSize;
+import com.mygdx.hiddenmarble.world.GameWorld;
+
+/**
+ * The CPU side of drawing one frame: {@code WorldRenderer.render} against a
+ * batch that only counts calls. The revealed maze is the worst case, with
+ * one sprite per wall tile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RendererBenchmark {
+    @Param({ "SMALL", "MEDIUM", "LARGE" })
+    public String size;
+    
+    @Param({ "true", "false" })
+    public boolean revealed;
+    
+    private GameWorld world;
+    private WorldRenderer renderer;
+    private Recorder recorder;
+    private Batch batch;
+    private Vector2 marblePosition;
+    
+    @Setup
+    public void setUp() {
+        MockBackend.init();
+        MazeSize mazeSize = MazeSize.valueOf(size);
+        world = new GameWorld(WIDTH * BOX2D_SCALE, HEIGHT * BOX2D_SCALE,
+                MazeHelper.getMaze(mazeSize.width, mazeSize.height, 1L));
+        renderer = new WorldRenderer(world);
+        renderer.setRevealed(revealed, 0.0f);
+        recorder = new Recorder();
+        batch = MockBackend.mock(Batch.class, recorder);
+        marblePosition = world.getMarblePosition();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        world.dispose();
+    }
+    
+    @Benchmark
+    public int render() {
+        renderer.render(1.0f / 60.0f, batch, marblePosition);
+        return recorder.calls;
+    }
+}
@@ -0,0 +1,72 @@
+package com.mygdx.hiddenmarble.benchmarks;
+
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.BOX2D_SCALE;
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.HEIGHT;
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.WIDTH;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mygdx.hiddenmarble.utils.MazeHelper;
+import com.mygdx.hiddenmarble.utils.SaveState;
+import com.mygdx.hiddenmarble.utils.Serialization;
+import com.mygdx.hiddenmarble.world.GameWorld;
+
+/**
+ * Save and load round trips of a medium world: the legacy Base64 Java
+ * serialization next to the binary save format. Each round trip creates a
+ * Box2D world, which is disposed again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SerializationBenchmark {
+    private GameWorld world;
+    
+    @Setup
+    public void setUp() {
+        world = new GameWorld(WIDTH * BOX2D_SCALE, HEIGHT * BOX2D_SCALE,
+                MazeHelper.getMaze(5, 6, 1L));
+    }
+    
+    @TearDown
+    public void tearDown() {
+        world.dispose();
+    }
+    
+    @Benchmark
+    public int javaSerialization() throws IOException, ClassNotFoundException {
+        String s = Serialization.toString(world);
+        GameWorld copy = (GameWorld) Serialization.fromString(s);
+        copy.dispose();
+        return s.length();
+    }
+    
+    @Benchmark
+    public int saveFile() throws IOException {
+        byte[] bytes = SaveState.encode(world, "PLAY");
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.skipBytes(8); // Magic and version.
+        in.readUTF();
+        in.readBoolean();
+        GameWorld.readState(in).dispose();
+        return bytes.length;
+    }
+}
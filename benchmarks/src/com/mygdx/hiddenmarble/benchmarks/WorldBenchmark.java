@@ -0,0 +1,63 @@
+package com.mygdx.hiddenmarble.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mygdx.hiddenmarble.utils.MazeHelper;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeSize;
+import com.mygdx.hiddenmarble.world.HeadlessSimulation;
+import com.mygdx.hiddenmarble.world.PhysicsBackend;
+
+/**
+ * {@code GameWorld.update} under the circling gravity script, one physics
+ * step per update, on each physics engine. Scores are per step.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class WorldBenchmark {
+    private static final int STEPS = 1000;
+    
+    @Param({ "SMALL", "MEDIUM", "LARGE", "EXPEDITION" })
+    public String size;
+    
+    @Param({ "BOX2D", "GRID" })
+    public String backend;
+    
+    private HeadlessSimulation simulation;
+    
+    @Setup
+    public void setUp() {
+        MazeSize mazeSize = MazeSize.valueOf(size);
+        simulation = new HeadlessSimulation(
+                MazeHelper.getMaze(mazeSize.width, mazeSize.height, 1L),
+                HeadlessSimulation.CIRCLE, PhysicsBackend.valueOf(backend));
+    }
+    
+    @TearDown
+    public void tearDown() {
+        simulation.dispose();
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public long update() {
+        return simulation.run(STEPS);
+    }
+}
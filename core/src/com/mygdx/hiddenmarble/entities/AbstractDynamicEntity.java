@@ -16,4 +16,9 @@ public abstract class AbstractDynamicEntity extends AbstractEntity
     public final Vector2 getLinearVelocity() {
         return getBody().getLinearVelocity();
     }
+    
+    @Override
+    public final void setLinearVelocity(float x, float y) {
+        getBody().setLinearVelocity(x, y);
+    }
 }
@@ -32,6 +32,11 @@ public abstract class AbstractEntity implements Entity {
         return body.getTransform();
     }
     
+    @Override
+    public void destroy() {
+        body.getWorld().destroyBody(body);
+    }
+    
     protected final void setPosition(Vector2 position) {
         body.setTransform(position, body.getAngle());
     }
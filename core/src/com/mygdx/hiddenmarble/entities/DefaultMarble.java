@@ -22,6 +22,14 @@ public class DefaultMarble extends AbstractDynamicEntity
         width = 2 * radius;
     }
 
+    @Override
+    public void reset(Vector2 position) {
+        setPosition(position);
+        getBody().setLinearVelocity(0.0f, 0.0f);
+        getBody().setAngularVelocity(0.0f);
+        getBody().setAwake(true);
+    }
+
     @Override
     public float getWidth() {
         return width;
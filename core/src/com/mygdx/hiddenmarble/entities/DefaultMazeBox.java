@@ -31,7 +31,7 @@ public class DefaultMazeBox extends AbstractEntity implements Entity, MazeBox {
         super(BodyHelper.getMazeBoxBody(world, mazeDef));
         width = mazeDef.maze.getWidth();
         height = mazeDef.maze.getHeight();
-        data = initData();
+        data = Collections.unmodifiableList(initData());
     }
 
     @Override
@@ -46,15 +46,20 @@ public class DefaultMazeBox extends AbstractEntity implements Entity, MazeBox {
 
     @Override
     public Vector2 getTileLocation(Point position) {
-        Vector2 ret = new Vector2(position.getX(), getHeight() - position.getY() - 1);
+        return getTileLocation(position, new Vector2());
+    }
+    
+    @Override
+    public Vector2 getTileLocation(Point position, Vector2 out) {
+        out.set(position.getX(), getHeight() - position.getY() - 1);
         Transform transform = getTransform();
-        transform.mul(ret);
-        return ret;
+        transform.mul(out);
+        return out;
     }
     
     @Override
     public List<MazeFixtureDef> getMazeFixtureDefs() {
-        return Collections.unmodifiableList(data);
+        return data;
     }
     
     private List<MazeFixtureDef> initData() {
@@ -6,4 +6,7 @@ import com.badlogic.gdx.math.Vector2;
 public interface DynamicEntity extends Entity {
     /** Returns the linear velocity vector of this entity's center of mass. */
     Vector2 getLinearVelocity();
+    
+    /** Sets the linear velocity of this entity's center of mass. */
+    void setLinearVelocity(float x, float y);
 }
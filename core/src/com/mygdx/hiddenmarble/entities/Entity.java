@@ -19,4 +19,7 @@ public interface Entity {
     
     /** Returns this entity's body origin transform. */
     Transform getTransform();
+    
+    /** Removes this entity's body from its Box2D world. */
+    void destroy();
 }
@@ -0,0 +1,22 @@
+package com.mygdx.hiddenmarble.entities;
+
+/**
+ * Contact metadata attached to every fixture as its user data, so contact
+ * callbacks can read it directly instead of inspecting bodies and entities.
+ */
+public class FixtureData {
+    /** The data shared by all border fixtures. */
+    public static final FixtureData BORDERS = new FixtureData(Material.GLASS, false, false);
+    /** The data shared by all marble fixtures. */
+    public static final FixtureData MARBLE = new FixtureData(Material.METAL, true, false);
+    
+    public final Material material;
+    public final boolean isMarble;
+    public final boolean isSensor;
+    
+    public FixtureData(Material material, boolean isMarble, boolean isSensor) {
+        this.material = material;
+        this.isMarble = isMarble;
+        this.isSensor = isSensor;
+    }
+}
@@ -1,5 +1,9 @@
 package com.mygdx.hiddenmarble.entities;
 
+import com.badlogic.gdx.math.Vector2;
+
 /** A moving ball. */
 public interface Marble extends DynamicEntity {
+    /** Puts the marble at rest at the specified world position. */
+    void reset(Vector2 position);
 }
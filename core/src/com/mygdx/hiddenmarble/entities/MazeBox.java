@@ -10,6 +10,13 @@ import maze.Point;
 public interface MazeBox extends Entity {
     /** Returns the world location of the specified tile. */
     Vector2 getTileLocation(Point position);
+    
+    /**
+     * Writes the world location of the specified tile into the out vector.
+     * 
+     * @return the out vector
+     */
+    Vector2 getTileLocation(Point position, Vector2 out);
 
     /** Returns an unmodifiable list of maze fixture definitions. */
     List<MazeFixtureDef> getMazeFixtureDefs();
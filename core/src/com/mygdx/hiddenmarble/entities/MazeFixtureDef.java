@@ -3,18 +3,29 @@ package com.mygdx.hiddenmarble.entities;
 import com.badlogic.gdx.math.Vector2;
 
 /** 
- * Maze fixture definitions. Fixture dimensions are omitted since all maze
- * fixtures other than the sensor are always 1 x 1 in Box2D meters. The
- * dimensions of the sensor can be deduced from the dimensions of the maze.
+ * Maze fixture definitions. Adjacent wall tiles are merged into rectangular
+ * fixtures, so a wall definition covers width x height tiles of 1 x 1 Box2D
+ * meters each. Corners always cover a single tile. All maze fixtures are
+ * made of wood.
  */
-public class MazeFixtureDef {
+public class MazeFixtureDef extends FixtureData {
     public final Vector2 center;
+    public final float width;
+    public final float height;
     public final boolean isCorner;
-    public final boolean isSensor;
     
+    /** Creates the definition of a 1 x 1 fixture. */
     public MazeFixtureDef(Vector2 center, boolean isCorner, boolean isSensor) {
+        this(center, 1.0f, 1.0f, isCorner, isSensor);
+    }
+    
+    public MazeFixtureDef(Vector2 center, float width, float height,
+            boolean isCorner, boolean isSensor) {
+        
+        super(Material.WOOD, false, isSensor);
         this.center = center;
+        this.width = width;
+        this.height = height;
         this.isCorner = isCorner;
-        this.isSensor = isSensor;
     }
 }
@@ -0,0 +1,188 @@
+package com.mygdx.hiddenmarble.entities;
+
+import static com.mygdx.hiddenmarble.utils.MazeHelper.CHUNK_SIZE;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.Transform;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.mygdx.hiddenmarble.utils.BodyHelper;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeDef;
+
+import maze.Point;
+
+/**
+ * A maze box for mazes too large to build whole. The corners and the sensor
+ * are always there, but walls are built only for the chunks around the point
+ * passed to {@link #update} and destroyed again once it has moved on, so the
+ * number of fixtures does not grow with the maze.
+ */
+public class StreamedMazeBox extends AbstractEntity implements Entity, MazeBox {
+    /** Chunks this close to the current one get their walls. */
+    private static final int LOAD_RADIUS = 1;
+    /** Chunks farther than this from the current one lose their walls. */
+    private static final int KEEP_RADIUS = 2;
+    /** Enough chunks for everything within the keep radius. */
+    private static final int SLOT_COUNT =
+            (2 * KEEP_RADIUS + 1) * (2 * KEEP_RADIUS + 1);
+
+    private final MazeDef mazeDef;
+    private final List<MazeFixtureDef> data;
+    private final Chunk[] chunks;
+    private final float width;
+    private final float height;
+    private final int columns;
+    private final int rows;
+    private final Vector2 origin;
+    private int currentX;
+    private int currentY;
+
+    /**
+     * Creates a maze box without walls. Call {@link #update} before the
+     * marble moves.
+     *
+     * @param world the Box2D world
+     * @param mazeDef the maze definition
+     */
+    public StreamedMazeBox(World world, MazeDef mazeDef) {
+        super(BodyHelper.getEmptyMazeBoxBody(world, mazeDef));
+        this.mazeDef = mazeDef;
+        width = mazeDef.maze.getWidth();
+        height = mazeDef.maze.getHeight();
+        columns = mazeDef.getChunkColumns();
+        rows = mazeDef.getChunkRows();
+        origin = new Vector2(getPosition());
+
+        List<MazeFixtureDef> frame =
+                BodyHelper.getMazeFrameFixtureDefs(mazeDef);
+        for (MazeFixtureDef def : frame) {
+            BodyHelper.createMazeFixture(getBody(), mazeDef, def);
+        }
+        data = Collections.unmodifiableList(frame);
+
+        chunks = new Chunk[SLOT_COUNT];
+        for (int i = 0; i < chunks.length; ++i) {
+            chunks[i] = new Chunk();
+        }
+        currentX = -1;
+        currentY = -1;
+    }
+
+    /**
+     * Builds the walls of the chunks around the specified world position and
+     * destroys those of chunks far from it. Costs next to nothing until the
+     * position moves into another chunk. Must not be called during a step.
+     */
+    public void update(Vector2 position) {
+        int tileX = MathUtils.floor(position.x - origin.x + 0.5f);
+        int tileY = (int) height - 1
+                - MathUtils.floor(position.y - origin.y + 0.5f);
+        int chunkX = MathUtils.clamp(tileX, 0, (int) width - 1) / CHUNK_SIZE;
+        int chunkY = MathUtils.clamp(tileY, 0, (int) height - 1) / CHUNK_SIZE;
+        if (chunkX == currentX && chunkY == currentY) {
+            return;
+        }
+        currentX = chunkX;
+        currentY = chunkY;
+
+        for (Chunk chunk : chunks) {
+            if (chunk.isLoaded() && (Math.abs(chunk.x - chunkX) > KEEP_RADIUS
+                    || Math.abs(chunk.y - chunkY) > KEEP_RADIUS)) {
+                chunk.unload(getBody());
+            }
+        }
+
+        int left = Math.max(0, chunkX - LOAD_RADIUS);
+        int right = Math.min(columns - 1, chunkX + LOAD_RADIUS);
+        int top = Math.max(0, chunkY - LOAD_RADIUS);
+        int bottom = Math.min(rows - 1, chunkY + LOAD_RADIUS);
+        for (int y = top; y <= bottom; ++y) {
+            for (int x = left; x <= right; ++x) {
+                if (find(x, y) == null) {
+                    /* There is always a free slot within the keep radius. */
+                    find(-1, -1).load(getBody(), mazeDef, x, y);
+                }
+            }
+        }
+    }
+
+    @Override
+    public float getWidth() {
+        return width;
+    }
+
+    @Override
+    public float getHeight() {
+        return height;
+    }
+
+    @Override
+    public Vector2 getTileLocation(Point position) {
+        return getTileLocation(position, new Vector2());
+    }
+
+    @Override
+    public Vector2 getTileLocation(Point position, Vector2 out) {
+        out.set(position.getX(), getHeight() - position.getY() - 1);
+        Transform transform = getTransform();
+        transform.mul(out);
+        return out;
+    }
+
+    /** Returns the corners and the sensor only; the walls come and go. */
+    @Override
+    public List<MazeFixtureDef> getMazeFixtureDefs() {
+        return data;
+    }
+
+    /** Returns the slot holding the specified chunk, or null if none does. */
+    private Chunk find(int x, int y) {
+        for (Chunk chunk : chunks) {
+            if (chunk.x == x && chunk.y == y) {
+                return chunk;
+            }
+        }
+        return null;
+    }
+
+    /** A slot for the wall fixtures of one chunk. */
+    private static class Chunk {
+        final Array<Fixture> fixtures;
+        int x;
+        int y;
+
+        Chunk() {
+            fixtures = new Array<Fixture>();
+            x = -1;
+            y = -1;
+        }
+
+        boolean isLoaded() {
+            return x >= 0;
+        }
+
+        void load(Body body, MazeDef mazeDef, int x, int y) {
+            this.x = x;
+            this.y = y;
+            for (MazeFixtureDef def : BodyHelper.getChunkFixtureDefs(mazeDef,
+                    x, y)) {
+                fixtures.add(BodyHelper.createMazeFixture(body, mazeDef, def));
+            }
+        }
+
+        void unload(Body body) {
+            for (int i = 0; i < fixtures.size; ++i) {
+                body.destroyFixture(fixtures.get(i));
+            }
+            fixtures.clear();
+            x = -1;
+            y = -1;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.mygdx.hiddenmarble.ui;
+
+import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.math.MathUtils;
+import com.mygdx.hiddenmarble.entities.Material;
+import com.mygdx.hiddenmarble.utils.Assets;
+import com.mygdx.hiddenmarble.world.GameWorldListener;
+
+/**
+ * Plays the sounds of world events. Roll events only set the volume each
+ * roll loop should have; {@link #update} moves the playing volume towards it
+ * once per frame and talks to the audio backend only when something audible
+ * changed. Hits play right away, but no more than a few at a time.
+ * <p>
+ * The roll loops are short, so they are kept decoded in memory as
+ * {@link Sound}s instead of being streamed from disk. Events that arrive
+ * before the sounds have loaded are dropped. Call everything from the render
+ * thread.
+ */
+public class AudioMixer implements GameWorldListener {
+    private static final float MAX_ROLL_VOLUME = 0.5f;
+    private static final float MAX_HIT_VOLUME = 0.8f;
+    /** How fast a roll loop's volume follows the marble, per second. */
+    private static final float VOLUME_RATE = 4.0f;
+    /** Volume changes smaller than this are not passed on. */
+    private static final float VOLUME_EPSILON = 0.01f;
+    /** The number of hits that may be heard at once. */
+    private static final int MAX_HIT_VOICES = 4;
+    /** How long a hit keeps its voice in seconds. */
+    private static final float HIT_DURATION = 0.2f;
+
+    private final float[] hitEnds;
+
+    /* Null until the sounds have loaded. */
+    private RollLoop wood;
+    private RollLoop glass;
+    private float time;
+
+    public AudioMixer() {
+        hitEnds = new float[MAX_HIT_VOICES];
+    }
+
+    /**
+     * Brings the roll loops closer to their target volumes. Call once per
+     * frame.
+     *
+     * @param delta the time since the last frame in seconds
+     */
+    public void update(float delta) {
+        if (wood == null) {
+            if (!Assets.isAudioLoaded()) {
+                return;
+            }
+            wood = new RollLoop(Assets.rollWood);
+            glass = new RollLoop(Assets.rollGlass);
+        }
+        time += delta;
+        wood.update(delta);
+        glass.update(delta);
+    }
+
+    /**
+     * Returns true if the roll loops have reached their target volumes, so
+     * that further updates would change nothing. Returns false while the
+     * sounds are loading.
+     */
+    public boolean isSettled() {
+        return wood != null && wood.isSettled() && glass.isSettled();
+    }
+
+    /** Silences everything at once. */
+    public void stop() {
+        Assets.stopSound();
+        if (wood != null) {
+            wood.reset();
+            glass.reset();
+        }
+        for (int i = 0; i < hitEnds.length; ++i) {
+            hitEnds[i] = 0.0f;
+        }
+        time = 0.0f;
+    }
+
+    @Override
+    public void marbleHit(float impulse, Material material) {
+        if (wood == null) {
+            return;
+        }
+        Sound toPlay = null;
+        switch (material) {
+        case GLASS:
+            toPlay = Assets.hitGlass;
+            break;
+        case WOOD:
+            toPlay = Assets.hitWood;
+            break;
+        default:
+            return;
+        }
+        int voice = freeVoice();
+        if (voice < 0) {
+            return; // Drowned out by the hits already playing.
+        }
+        hitEnds[voice] = time + HIT_DURATION;
+        toPlay.play(Math.min(MAX_HIT_VOLUME, 0.02f * impulse));
+    }
+
+    @Override
+    public void marbleRoll(float len2, Material material) {
+        if (wood == null) {
+            return;
+        }
+        switch (material) {
+        case GLASS:
+            wood.target = 0.0f;
+            glass.target = Math.min(MAX_ROLL_VOLUME, len2 * 0.001f);
+            break;
+        case WOOD:
+            glass.target = 0.0f;
+            wood.target = Math.min(MAX_ROLL_VOLUME, len2 * 0.01f);
+            break;
+        default:
+            break;
+        }
+    }
+
+    @Override
+    public void marbleStop() {
+        if (wood == null) {
+            return;
+        }
+        wood.target = 0.0f;
+        glass.target = 0.0f;
+    }
+
+    @Override
+    public void mazeSolved() {
+    }
+
+    /** Returns a voice whose hit has ended, or -1 if all are busy. */
+    private int freeVoice() {
+        for (int i = 0; i < hitEnds.length; ++i) {
+            if (hitEnds[i] <= time) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** A looping sound and the volume it is played at. */
+    private static class RollLoop {
+        final Sound sound;
+
+        float target;
+        float volume;
+        float sentVolume;
+        long id;
+        boolean playing;
+
+        RollLoop(Sound sound) {
+            this.sound = sound;
+            id = -1L;
+        }
+
+        void update(float delta) {
+            float step = VOLUME_RATE * delta;
+            volume += MathUtils.clamp(target - volume, -step, step);
+            if (volume <= 0.0f) {
+                volume = 0.0f;
+                if (playing) {
+                    sound.pause(id);
+                    playing = false;
+                }
+                return;
+            }
+            if (!playing) {
+                start();
+            } else if (Math.abs(volume - sentVolume) >= VOLUME_EPSILON
+                    || volume == target && volume != sentVolume) {
+                sound.setVolume(id, volume);
+                sentVolume = volume;
+            }
+        }
+
+        boolean isSettled() {
+            if (volume != target) {
+                return false;
+            }
+            return volume == 0.0f ? !playing : sentVolume == volume;
+        }
+
+        void reset() {
+            target = 0.0f;
+            volume = 0.0f;
+            sentVolume = 0.0f;
+            id = -1L;
+            playing = false;
+        }
+
+        /** Starts the loop, or resumes it where it was paused. */
+        private void start() {
+            if (id == -1L) {
+                id = sound.loop(volume);
+                if (id == -1L) {
+                    return; // No free channel; tries again next frame.
+                }
+            } else {
+                sound.setVolume(id, volume);
+                sound.resume(id);
+            }
+            sentVolume = volume;
+            playing = true;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.mygdx.hiddenmarble.ui;
+
+import com.mygdx.hiddenmarble.world.PhysicsBackend;
+
+/** Launch options for {@link HiddenMarble}, set by the platform launchers. */
+public class GameConfig {
+    /**
+     * Physics steps per second. Lower rates save CPU time on weak devices;
+     * the marble is interpolated between steps.
+     */
+    public float physicsRate = 45.0f;
+    
+    /**
+     * The physics engine. {@link PhysicsBackend#GRID} is several times
+     * cheaper per step than Box2D but moves the marble slightly differently.
+     */
+    public PhysicsBackend physicsBackend = PhysicsBackend.BOX2D;
+    
+    /**
+     * Whether to step the physics on its own thread. This keeps physics
+     * spikes out of the frame time on multi-core devices.
+     */
+    public boolean physicsThread = false;
+    
+    /**
+     * Whether to stop drawing frames while nothing visible changes, i.e. while
+     * the maze is covered. Frames are still drawn for input, UI changes and
+     * sounds. Takes effect only with {@link #physicsThread}, since otherwise
+     * the physics is stepped by frames.
+     */
+    public boolean onDemandRendering = false;
+    
+    /**
+     * Whether to play expedition mazes, which are hundreds of cells on a
+     * side. The camera follows the marble, and only the part of the maze
+     * around it is built and drawn. Drawing on demand is off while the
+     * camera follows the marble.
+     */
+    public boolean expedition = false;
+    
+    /**
+     * Whether to record new games (maze seed and gravity per physics step)
+     * so they can be replayed headlessly. Loaded games are not recorded.
+     */
+    public boolean recordSessions = false;
+    
+    /** Local storage directory for session recordings. */
+    public String recordingDir = "recordings";
+    
+    /**
+     * Whether the performance HUD is shown from the start. F3 toggles it and
+     * F4 writes the last 30 seconds of samples to local storage.
+     */
+    public boolean perfHud = false;
+    
+    /**
+     * Whether to write the performance samples to local storage whenever the
+     * game is paused, e.g. when the app goes to the background. This is the
+     * way to get samples off devices without a keyboard. Takes effect only
+     * while the HUD is shown.
+     */
+    public boolean perfDumpOnPause = false;
+    
+    /**
+     * The texture memory to stay within, in bytes. Smaller sprites are loaded
+     * if the ones that suit the screen would not fit.
+     */
+    public int textureBudget = 4 * 1024 * 1024;
+    
+    /**
+     * The name of the save file. Tools that drive the game give it a name of
+     * their own so the player's game is left alone.
+     */
+    public String saveName = HiddenMarble.SAVE;
+}
@@ -3,10 +3,13 @@ package com.mygdx.hiddenmarble.ui;
 import static com.mygdx.hiddenmarble.ui.HiddenMarble.ACCEL_MULTIPLIER;
 import static com.mygdx.hiddenmarble.ui.HiddenMarble.BOX2D_SCALE;
 import static com.mygdx.hiddenmarble.ui.HiddenMarble.HEIGHT;
-import static com.mygdx.hiddenmarble.ui.HiddenMarble.SAVE;
 import static com.mygdx.hiddenmarble.ui.HiddenMarble.WIDTH;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.ScreenAdapter;
 import com.badlogic.gdx.ai.fsm.DefaultStateMachine;
@@ -16,6 +19,7 @@ import com.badlogic.gdx.ai.msg.Telegram;
 import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.scenes.scene2d.InputEvent;
 import com.badlogic.gdx.scenes.scene2d.Stage;
@@ -24,33 +28,68 @@ import com.badlogic.gdx.scenes.scene2d.ui.Label;
 import com.badlogic.gdx.scenes.scene2d.ui.Table;
 import com.badlogic.gdx.scenes.scene2d.ui.TextButton;
 import com.badlogic.gdx.scenes.scene2d.utils.ClickListener;
+import com.badlogic.gdx.utils.StreamUtils;
 import com.badlogic.gdx.utils.viewport.FitViewport;
 import com.badlogic.gdx.utils.viewport.Viewport;
 import com.mygdx.hiddenmarble.utils.Assets;
+import com.mygdx.hiddenmarble.utils.AutoSaver;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeDef;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeSize;
+import com.mygdx.hiddenmarble.utils.MazePool;
 import com.mygdx.hiddenmarble.utils.SaveState;
 import com.mygdx.hiddenmarble.world.GameWorld;
 import com.mygdx.hiddenmarble.world.GameWorldListener;
 import com.mygdx.hiddenmarble.world.GameWorldAdapter;
+import com.mygdx.hiddenmarble.world.GravityScript;
+import com.mygdx.hiddenmarble.world.PhysicsThread;
+import com.mygdx.hiddenmarble.world.SessionRecording;
+import com.mygdx.hiddenmarble.world.WorldStats;
 
 /** Displays the game and adds a UI overlay. */
 public class GameScreen extends ScreenAdapter implements Screen {   
     /** The duration of the cover fade animation in seconds. */
     private static final float FADE_TIME = 2.0f;
+    /** The number of mazes generated ahead of time. */
+    private static final int MAZE_POOL_CAPACITY = 2;
+    /** Seconds between checks for unsaved changes. */
+    private static final float AUTOSAVE_INTERVAL = 5.0f;
+    /** Seconds of performance samples kept for dumping. */
+    private static final float PERF_HISTORY = 30.0f;
+    /** Loading time per frame while sounds load during play. */
+    private static final int LOAD_SLICE_MILLIS = 2;
     
     private final HiddenMarble game;
     private final SaveState save;
+    private final AutoSaver autoSaver;
+    private final MazePool mazePool;
     private final Camera camera;
     private final Viewport viewport;
     private final Stage stage;
     private final StateMachine<GameScreen> stateMachine;
     private final GameWorldListener worldListener;
+    private final AudioMixer mixer;
     private final Vector2 gravity;
+    private final GravityScript accelerometer;
+    private final PerfHud perfHud;
+    private final WorldStats hudStats;
     private final float scaledWidth;
     private final float scaledHeight;
     
     private GameWorld world;
+    private PhysicsThread physics;
+    private SessionRecording recording;
     private WorldRenderer renderer;
     
+    /*
+     * What the last autosave snapshot was taken from. Used by whichever
+     * thread owns the world; changed elsewhere only while physics is stopped.
+     */
+    private long savedStepCount;
+    private UIState savedUIState;
+    private float autosaveTime;
+    private boolean renderOnDemand;
+    private boolean following;
+    
     public GameScreen(HiddenMarble game) {
         this.game = game;
         
@@ -65,6 +104,15 @@ public class GameScreen extends ScreenAdapter implements Screen {
         
         gravity = new Vector2();
         
+        accelerometer = new GravityScript() {
+            @Override
+            public void getGravity(long step, Vector2 out) {
+                out.set(Gdx.input.getAccelerometerX(),
+                        Gdx.input.getAccelerometerY());
+                out.scl(ACCEL_MULTIPLIER);
+            }
+        };
+        
         stateMachine = new DefaultStateMachine<GameScreen>(this, UIState.PLAY);
         
         worldListener = new GameWorldAdapter() {
@@ -76,7 +124,20 @@ public class GameScreen extends ScreenAdapter implements Screen {
             }
         };
         
-        save = new SaveState(SAVE);
+        mixer = new AudioMixer();
+        
+        perfHud = new PerfHud(PERF_HISTORY);
+        perfHud.setEnabled(game.config.perfHud);
+        hudStats = new WorldStats();
+        
+        MazeSize size = game.config.expedition
+                ? MazeSize.EXPEDITION
+                : MazeSize.MEDIUM;
+        mazePool = new MazePool(size, MAZE_POOL_CAPACITY);
+        
+        save = new SaveState(game.config.saveName,
+                game.config.physicsBackend);
+        autoSaver = new AutoSaver(save);
         if (!load(save)) {
             startNewGame();
         }
@@ -84,24 +145,60 @@ public class GameScreen extends ScreenAdapter implements Screen {
 
     @Override
     public void render(float delta) {        
+        handleDebugKeys();
+        if (!Assets.isAudioLoaded()) {
+            Assets.update(LOAD_SLICE_MILLIS); // The game starts without sounds.
+        }
+        if (perfHud.isEnabled()) {
+            perfHud.beginFrame();
+        }
+        
         /* Gets the accelerometer readings. */
         float accelX = Gdx.input.getAccelerometerX();
         float accelY = Gdx.input.getAccelerometerY();
         gravity.set(accelX, accelY).scl(ACCEL_MULTIPLIER);
         
         /* Updates the physics. */
-        world.update(delta, gravity);
+        Vector2 marblePos;
+        if (physics != null) {
+            physics.update(gravity);
+            marblePos = physics.getMarbleRenderPosition();
+        } else {
+            world.update(delta, gravity);
+            marblePos = world.getMarbleRenderPosition();
+        }
+        if (following) {
+            followMarble(marblePos);
+        }
         
-        /* Draws the game. */
+        /* 
+         * Draws the game. After a pause in rendering, the delta spans all of
+         * it and would skip a fade that starts this frame.
+         */
+        float frameDelta = renderOnDemand ? 0.0f : delta;
         Gdx.gl.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
         game.batch.setProjectionMatrix(camera.combined);
         game.batch.begin();
-        renderer.render(delta, game.batch);
+        renderer.render(frameDelta, game.batch, marblePos);
         game.batch.end();
 
         /* Draws the UI overlay. */
         stage.draw();
+        
+        mixer.update(delta);
+        
+        if (perfHud.isEnabled()) {
+            drawPerfHud(delta);
+        }
+        
+        autosaveTime += delta;
+        if (autosaveTime >= AUTOSAVE_INTERVAL) {
+            autosaveTime = 0.0f;
+            autosave();
+        }
+        
+        updateRenderingMode();
     }
     
     @Override
@@ -113,33 +210,245 @@ public class GameScreen extends ScreenAdapter implements Screen {
     
     @Override
     public void pause() {
-        Assets.stopSound();
-        save(save);
+        mixer.stop();
+        stopPhysics();
+        takeSnapshot(getUIState());
+        autoSaver.flush();
+        writeRecording();
+        if (game.config.perfDumpOnPause && perfHud.isEnabled()) {
+            dumpPerfSamples();
+        }
+    }
+    
+    @Override
+    public void resume() {
+        renderer.invalidate(); // The GL context may have been lost.
+        startPhysics();
+    }
+    
+    /**
+     * Returns the number of physics steps the current world has taken. With
+     * the physics thread running, the count may lag by a step.
+     */
+    public long getStepCount() {
+        return world.getStepCount();
     }
     
     @Override
     public void dispose() {
+        if (renderOnDemand) {
+            Gdx.graphics.setContinuousRendering(true);
+        }
+        stopPhysics();
+        autoSaver.dispose();
+        mazePool.dispose();
+        perfHud.dispose();
+        renderer.dispose();
         stage.dispose();
         world.dispose();
     }
     
     private void startNewGame() {
-        Assets.stopSound();
+        mixer.stop();
+        /* Runs pending autosaves first so they can't outlive the erase. */
+        stopPhysics();
         save.clear();
-        save.erase();
-        world = new GameWorld(scaledWidth, scaledHeight);
-        renderer = new WorldRenderer(world);
-        world.addListener(renderer);
-        world.addListener(worldListener);
+        autoSaver.erase();
+        savedStepCount = -1L; // The maze changes without a step.
+        MazeDef mazeDef = mazePool.take();
+        if (world != null && (recording != null
+                || mazeDef.isStreamed() != world.getMazeDef().isStreamed())) {
+            /* 
+             * A recycled world would not replay exactly, and the borders of
+             * a world are sized for the kind of maze it was created with.
+             */
+            writeRecording();
+            world.dispose();
+            world = null;
+        }
+        if (world == null) {
+            world = new GameWorld(scaledWidth, scaledHeight, mazeDef,
+                    game.config.physicsBackend);
+            attachWorld(game.config.recordSessions);
+        } else {
+            world.reset(mazeDef);
+            renderer.reset();
+            startPhysics();
+        }
         stateMachine.changeState(UIState.PLAY);
     }
+    
+    /**
+     * Sets up rendering and event delivery for a new or loaded world.
+     * 
+     * @param record whether to record the session; only fresh worlds can be
+     *        replayed exactly
+     */
+    private void attachWorld(boolean record) {
+        world.setTimeStep(1.0f / game.config.physicsRate);
+        recording = null;
+        if (record) {
+            recording = new SessionRecording(world);
+            world.setRecording(recording);
+        }
+        if (renderer != null) {
+            renderer.dispose();
+        }
+        renderer = new WorldRenderer(world);
+        following = world.getMazeDef().isStreamed();
+        if (following) {
+            followMarble(world.getMarblePosition());
+        } else {
+            camera.position.setZero();
+            camera.update();
+        }
+        if (game.config.physicsThread) {
+            physics = new PhysicsThread(world);
+            if (game.config.onDemandRendering) {
+                physics.setGravityScript(accelerometer);
+                physics.setRequestRendering(renderOnDemand);
+            }
+            physics.setSampleStats(perfHud.isEnabled());
+            physics.addListener(mixer);
+            physics.addListener(worldListener);
+            physics.start();
+        } else {
+            world.addListener(mixer);
+            world.addListener(worldListener);
+        }
+    }
+    
+    /** F3 toggles the performance HUD, F4 writes its samples to a file. */
+    private void handleDebugKeys() {
+        if (Gdx.input.isKeyJustPressed(Keys.F3)) {
+            perfHud.setEnabled(!perfHud.isEnabled());
+            if (physics != null) {
+                physics.setSampleStats(perfHud.isEnabled());
+            }
+        }
+        if (Gdx.input.isKeyJustPressed(Keys.F4) && perfHud.isEnabled()) {
+            dumpPerfSamples();
+        }
+    }
+    
+    /** Writes the performance samples to a new file in local storage. */
+    private void dumpPerfSamples() {
+        String name = "perf/" + System.currentTimeMillis() + ".csv";
+        try {
+            perfHud.dump(Gdx.files.local(name));
+            Gdx.app.log("GameScreen", "Wrote " + name);
+        } catch (IOException e) {
+            Gdx.app.error("GameScreen", "Could not write " + name, e);
+        }
+    }
+    
+    private void drawPerfHud(float delta) {
+        if (physics != null) {
+            physics.getStats(hudStats); // Sampled after the latest step.
+        } else {
+            world.getStats(hudStats);
+        }
+        perfHud.endFrame(delta, hudStats);
+        perfHud.draw(game.batch, Assets.uiSkin.getFont("default-font"));
+    }
+    
+    /**
+     * Centers the camera on the marble, but no closer to the world's borders
+     * than half a screen, and shows the renderer what is in view.
+     */
+    private void followMarble(Vector2 marblePos) {
+        float rangeX = (world.getWidth() - scaledWidth) / 2.0f;
+        float rangeY = (world.getHeight() - scaledHeight) / 2.0f;
+        camera.position.set(MathUtils.clamp(marblePos.x, -rangeX, rangeX),
+                MathUtils.clamp(marblePos.y, -rangeY, rangeY), 0.0f);
+        camera.update();
+        renderer.setView(camera.position.x, camera.position.y, scaledWidth,
+                scaledHeight);
+    }
+    
+    /**
+     * Draws frames only on demand while the covered maze looks the same from
+     * frame to frame, unless the performance HUD is up or the camera follows
+     * the marble. The physics thread
+     * then polls the accelerometer itself and asks for frames when there are
+     * sounds to play; the frames go on until the sounds have faded in or out.
+     */
+    private void updateRenderingMode() {
+        boolean onDemand = physics != null && game.config.onDemandRendering
+                && renderer.isCoverStatic() && !perfHud.isEnabled()
+                && !following;
+        if (onDemand != renderOnDemand) {
+            renderOnDemand = onDemand;
+            Gdx.graphics.setContinuousRendering(!onDemand);
+            if (physics != null) {
+                physics.setRequestRendering(onDemand);
+            }
+        }
+        if (renderOnDemand && !mixer.isSettled()) {
+            Gdx.graphics.requestRendering();
+        }
+    }
+    
+    private void startPhysics() {
+        if (physics != null) {
+            physics.start();
+        }
+    }
+    
+    private void stopPhysics() {
+        if (physics != null) {
+            physics.stop();
+        }
+    }
 
-    private void save(SaveState save) {
-        save.setWorld(world);
-        UIState state = (UIState)stateMachine.getCurrentState();
-        String stateName = state.name();
-        save.setUIState(stateName);
-        save.save();
+    /** Writes the session recording so far, if there is one. */
+    private void writeRecording() {
+        if (recording == null) {
+            return;
+        }
+        String name = game.config.recordingDir + "/" + recording.getSeed() + ".rec";
+        OutputStream out = Gdx.files.local(name).write(false);
+        try {
+            recording.write(out);
+        } catch (IOException e) {
+            Gdx.app.error("GameScreen", "Could not write " + name, e);
+        } finally {
+            StreamUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Hands a snapshot to the auto saver if anything changed since the last
+     * one. The snapshot is taken between physics steps when the physics
+     * thread is running.
+     */
+    private void autosave() {
+        final UIState state = getUIState();
+        if (physics == null) {
+            takeSnapshot(state);
+            return;
+        }
+        physics.post(new Runnable() {
+            @Override
+            public void run() {
+                takeSnapshot(state);
+            }
+        });
+    }
+    
+    /** Call only from the thread that owns the world. */
+    private void takeSnapshot(UIState state) {
+        long stepCount = world.getStepCount();
+        if (stepCount == savedStepCount && state == savedUIState) {
+            return; // The marble hasn't moved and the UI hasn't changed.
+        }
+        autoSaver.submit(SaveState.encode(world, state.name()));
+        savedStepCount = stepCount;
+        savedUIState = state;
+    }
+    
+    private UIState getUIState() {
+        return (UIState)stateMachine.getCurrentState();
     }
     
     private boolean load(SaveState save) {
@@ -160,16 +469,18 @@ public class GameScreen extends ScreenAdapter implements Screen {
             return false;
         }
 
+        if (state == UIState.CONFIRM_GIVE_UP) {
+            state = UIState.PLAY; // Clears the dialog.
+        }
+
         world = savedWorld;
         world.resize(scaledWidth, scaledHeight);
-        renderer = new WorldRenderer(world);
-        world.addListener(renderer);
-        world.addListener(worldListener);
+        /* Set before the physics thread starts reading them. */
+        savedStepCount = world.getStepCount();
+        savedUIState = state;
+        attachWorld(false);
 
         switch (state) {
-        case CONFIRM_GIVE_UP:
-            state = UIState.PLAY; // Clears the dialog.
-            break;
         case GAVE_UP:
         case WIN:
             revealMaze(0.0f); // Skips the fade animation.
@@ -180,7 +491,7 @@ public class GameScreen extends ScreenAdapter implements Screen {
         
         stateMachine.changeState(state);
         
-        Assets.stopSound();
+        mixer.stop();
         
         return true;
     }
@@ -237,6 +548,7 @@ public class GameScreen extends ScreenAdapter implements Screen {
         label.setColor(0.5f, 1.0f, 0.0f, 1.0f);
         
         Vector2 start = world.getMarbleStart();
+        start.sub(camera.position.x, camera.position.y);
         start.scl(1.0f / BOX2D_SCALE);
         table.add(label);
         table.setPosition(start.x, start.y);
@@ -246,7 +558,9 @@ public class GameScreen extends ScreenAdapter implements Screen {
     }
     
     private void playWinSound() {
-        Assets.magic.play(0.5f);
+        if (Assets.isAudioLoaded()) {
+            Assets.magic.play(0.5f);
+        }
     }
     
     private void clearUI() {
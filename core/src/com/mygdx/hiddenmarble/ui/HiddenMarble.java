@@ -1,6 +1,7 @@
 package com.mygdx.hiddenmarble.ui;
 
 import com.badlogic.gdx.Game;
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.mygdx.hiddenmarble.utils.Assets;
@@ -20,13 +21,32 @@ public class HiddenMarble extends Game {
     /** The location of the save file. */
     public static final String SAVE = ".hidden_marble_save";
     
+    final GameConfig config;
     Batch batch;
     
+    public HiddenMarble() {
+        this(new GameConfig());
+    }
+    
+    /**
+     * Creates the game with the specified launch options.
+     * 
+     * @throws IllegalArgumentException if the physics rate is not positive
+     */
+    public HiddenMarble(GameConfig config) {
+        if (!(config.physicsRate > 0.0f)) {
+            throw new IllegalArgumentException("Non-positive physics rate");
+        }
+        this.config = config;
+    }
+    
     @Override
     public void create() {
         batch = new SpriteBatch();
-        Assets.init();
-        setScreen(new GameScreen(this));
+        float screenScale = Math.min((float) Gdx.graphics.getWidth() / WIDTH,
+                (float) Gdx.graphics.getHeight() / HEIGHT);
+        Assets.load(screenScale, config.textureBudget);
+        setScreen(new LoadingScreen(this));
     }
     
     @Override
@@ -0,0 +1,68 @@
+package com.mygdx.hiddenmarble.ui;
+
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.HEIGHT;
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.WIDTH;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Screen;
+import com.badlogic.gdx.ScreenAdapter;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
+import com.badlogic.gdx.utils.viewport.FitViewport;
+import com.badlogic.gdx.utils.viewport.Viewport;
+import com.mygdx.hiddenmarble.utils.Assets;
+
+/**
+ * Shows a progress bar while the assets needed to draw the game load, then
+ * switches to the game. It uses no assets itself, so it can be shown on the
+ * first frame.
+ */
+public class LoadingScreen extends ScreenAdapter implements Screen {
+    /** Loading time per frame; leaves room for drawing in a 60 Hz frame. */
+    private static final int LOAD_SLICE_MILLIS = 12;
+    private static final float BAR_WIDTH = 240.0f;
+    private static final float BAR_HEIGHT = 8.0f;
+
+    private final HiddenMarble game;
+    private final Viewport viewport;
+    private final ShapeRenderer shapes;
+
+    public LoadingScreen(HiddenMarble game) {
+        this.game = game;
+        viewport = new FitViewport(WIDTH, HEIGHT);
+        shapes = new ShapeRenderer();
+    }
+
+    @Override
+    public void render(float delta) {
+        Assets.update(LOAD_SLICE_MILLIS);
+        if (Assets.isGraphicsLoaded()) {
+            game.setScreen(new GameScreen(game));
+            dispose();
+            return;
+        }
+
+        float x = (WIDTH - BAR_WIDTH) / 2.0f;
+        float y = (HEIGHT - BAR_HEIGHT) / 2.0f;
+        Gdx.gl.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+        shapes.setProjectionMatrix(viewport.getCamera().combined);
+        shapes.begin(ShapeType.Filled);
+        shapes.setColor(0.25f, 0.25f, 0.25f, 1.0f);
+        shapes.rect(x, y, BAR_WIDTH, BAR_HEIGHT);
+        shapes.setColor(0.5f, 1.0f, 0.0f, 1.0f);
+        shapes.rect(x, y, BAR_WIDTH * Assets.getGraphicsProgress(), BAR_HEIGHT);
+        shapes.end();
+    }
+
+    @Override
+    public void resize(int width, int height) {
+        viewport.update(width, height, true);
+    }
+
+    @Override
+    public void dispose() {
+        shapes.dispose();
+    }
+}
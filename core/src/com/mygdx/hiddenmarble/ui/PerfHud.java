@@ -0,0 +1,256 @@
+package com.mygdx.hiddenmarble.ui;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
+import com.badlogic.gdx.graphics.profiling.GLProfiler;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.mygdx.hiddenmarble.world.WorldStats;
+
+/**
+ * A debug overlay showing where frame time goes: frame rate, a frame time
+ * graph, physics steps per frame, how often the physics had to drop steps,
+ * Box2D object counts and GL draw calls and texture binds. The samples of
+ * the last few seconds are kept and can be written to a file.
+ * <p>
+ * While enabled, GL calls go through {@link GLProfiler}, which adds some
+ * overhead of its own.
+ */
+public class PerfHud implements Disposable {
+    /** The highest frame rate the history is sized for. */
+    private static final int MAX_FPS = 120;
+    /** The number of frames shown in the graph. */
+    private static final int GRAPH_FRAMES = 120;
+    /** The frame time at the top of the graph in milliseconds. */
+    private static final float GRAPH_MAX_MS = 50.0f;
+    private static final float GRAPH_HEIGHT = 100.0f;
+    private static final float MARGIN = 8.0f;
+
+    private final int capacity;
+    private final float[] times;
+    private final float[] frameMillis;
+    private final float[] cpuMillis;
+    private final int[] steps;
+    private final int[] clamps;
+    private final int[] bodies;
+    private final int[] fixtures;
+    private final int[] contacts;
+    private final int[] drawCalls;
+    private final int[] textureBinds;
+    private final Matrix4 projection;
+    private final StringBuilder text;
+
+    private ShapeRenderer shapes;
+    private boolean enabled;
+    private int head;
+    private int size;
+    private float time;
+    private long frameStart;
+    private long lastStepCount;
+    private long lastClampCount;
+
+    /**
+     * Creates a disabled HUD.
+     *
+     * @param  seconds how many seconds of samples to keep
+     * @throws IllegalArgumentException if seconds is not positive
+     */
+    public PerfHud(float seconds) {
+        if (!(seconds > 0.0f)) {
+            throw new IllegalArgumentException("Non-positive history length");
+        }
+        capacity = Math.max(GRAPH_FRAMES, (int) Math.ceil(seconds * MAX_FPS));
+        times = new float[capacity];
+        frameMillis = new float[capacity];
+        cpuMillis = new float[capacity];
+        steps = new int[capacity];
+        clamps = new int[capacity];
+        bodies = new int[capacity];
+        fixtures = new int[capacity];
+        contacts = new int[capacity];
+        drawCalls = new int[capacity];
+        textureBinds = new int[capacity];
+        projection = new Matrix4();
+        text = new StringBuilder();
+        lastStepCount = -1L;
+    }
+
+    /** Shows or hides the HUD and starts or stops GL profiling. */
+    public void setEnabled(boolean enabled) {
+        if (enabled == this.enabled) {
+            return;
+        }
+        this.enabled = enabled;
+        if (enabled) {
+            GLProfiler.enable();
+            lastStepCount = -1L;
+        } else {
+            GLProfiler.disable();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Call at the start of a frame, before anything is drawn. */
+    public void beginFrame() {
+        frameStart = System.nanoTime();
+        GLProfiler.reset();
+    }
+
+    /**
+     * Records a sample for the frame. Call after the game has been drawn
+     * and before {@link #draw}, so that the HUD's own drawing isn't counted.
+     *
+     * @param delta the time since the last frame in seconds
+     * @param stats the world's current counters
+     */
+    public void endFrame(float delta, WorldStats stats) {
+        long cpuNanos = System.nanoTime() - frameStart;
+        time += delta;
+
+        /* The first sample after a world change has no step baseline. */
+        boolean baseline = lastStepCount >= 0L
+                && stats.stepCount >= lastStepCount
+                && stats.clampCount >= lastClampCount;
+
+        int i = head;
+        times[i] = time;
+        frameMillis[i] = delta * 1000.0f;
+        cpuMillis[i] = cpuNanos / 1e6f;
+        steps[i] = baseline ? (int) (stats.stepCount - lastStepCount) : 0;
+        clamps[i] = baseline ? (int) (stats.clampCount - lastClampCount) : 0;
+        bodies[i] = stats.bodyCount;
+        fixtures[i] = stats.fixtureCount;
+        contacts[i] = stats.contactCount;
+        drawCalls[i] = GLProfiler.drawCalls;
+        textureBinds[i] = GLProfiler.textureBindings;
+
+        lastStepCount = stats.stepCount;
+        lastClampCount = stats.clampCount;
+        head = (head + 1) % capacity;
+        size = Math.min(size + 1, capacity);
+    }
+
+    /**
+     * Draws the HUD in screen pixels. The batch must not be drawing; its
+     * projection matrix is changed.
+     *
+     * @param batch the batcher
+     * @param font the font for the text
+     */
+    public void draw(Batch batch, BitmapFont font) {
+        if (size == 0) {
+            return;
+        }
+        float width = Gdx.graphics.getWidth();
+        float height = Gdx.graphics.getHeight();
+        projection.setToOrtho2D(0.0f, 0.0f, width, height);
+        drawGraph(width);
+
+        int last = index(size - 1);
+        int clampTotal = 0;
+        for (int j = 0; j < size; ++j) {
+            clampTotal += clamps[j];
+        }
+        text.setLength(0);
+        text.append("FPS ").append(Gdx.graphics.getFramesPerSecond())
+        .append("  frame ").append(round(frameMillis[last]))
+        .append(" ms  cpu ").append(round(cpuMillis[last])).append(" ms\n");
+        text.append("steps/frame ").append(steps[last])
+        .append("  clamped frames ").append(clampTotal).append('\n');
+        text.append("bodies ").append(bodies[last])
+        .append("  fixtures ").append(fixtures[last])
+        .append("  contacts ").append(contacts[last]).append('\n');
+        text.append("draw calls ").append(drawCalls[last])
+        .append("  texture binds ").append(textureBinds[last]);
+
+        batch.setProjectionMatrix(projection);
+        batch.begin();
+        font.drawMultiLine(batch, text, MARGIN, height - MARGIN);
+        batch.end();
+    }
+
+    /**
+     * Writes the kept samples to a file as comma-separated values, oldest
+     * first.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void dump(FileHandle file) throws IOException {
+        Writer out = file.writer(false);
+        try {
+            out.write("time_s,frame_ms,cpu_ms,steps,clamps,bodies,fixtures,"
+                    + "contacts,draw_calls,texture_binds\n");
+            for (int j = 0; j < size; ++j) {
+                int i = index(j);
+                out.write(times[i] + "," + frameMillis[i] + "," + cpuMillis[i]
+                        + "," + steps[i] + "," + clamps[i] + "," + bodies[i]
+                        + "," + fixtures[i] + "," + contacts[i] + ","
+                        + drawCalls[i] + "," + textureBinds[i] + "\n");
+            }
+        } finally {
+            StreamUtils.closeQuietly(out);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        setEnabled(false);
+        if (shapes != null) {
+            shapes.dispose();
+        }
+    }
+
+    /** Draws one bar per frame along the bottom, colored by frame time. */
+    private void drawGraph(float width) {
+        if (shapes == null) {
+            shapes = new ShapeRenderer();
+        }
+        int frames = Math.min(size, GRAPH_FRAMES);
+        float barWidth = (width - 2.0f * MARGIN) / GRAPH_FRAMES;
+        float scale = GRAPH_HEIGHT / GRAPH_MAX_MS;
+
+        shapes.setProjectionMatrix(projection);
+        shapes.begin(ShapeType.Filled);
+        for (int j = 0; j < frames; ++j) {
+            float ms = frameMillis[index(size - frames + j)];
+            if (ms > 1000.0f / 30.0f) {
+                shapes.setColor(Color.RED);
+            } else if (ms > 1000.0f / 55.0f) {
+                shapes.setColor(Color.YELLOW);
+            } else {
+                shapes.setColor(Color.GREEN);
+            }
+            float barHeight = Math.min(ms, GRAPH_MAX_MS) * scale;
+            shapes.rect(MARGIN + j * barWidth, MARGIN, barWidth, barHeight);
+        }
+        shapes.end();
+
+        /* Marks 60 fps. */
+        shapes.begin(ShapeType.Line);
+        shapes.setColor(Color.WHITE);
+        float y = MARGIN + 1000.0f / 60.0f * scale;
+        shapes.line(MARGIN, y, width - MARGIN, y);
+        shapes.end();
+    }
+
+    /** Maps the nth oldest sample to its slot. */
+    private int index(int n) {
+        return (head - size + n + capacity) % capacity;
+    }
+
+    private static float round(float ms) {
+        return Math.round(ms * 10.0f) / 10.0f;
+    }
+}
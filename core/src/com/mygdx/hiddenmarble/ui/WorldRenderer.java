@@ -1,24 +1,46 @@
 package com.mygdx.hiddenmarble.ui;
 
+import static com.mygdx.hiddenmarble.utils.MazeHelper.CHUNK_SIZE;
+import static com.mygdx.hiddenmarble.utils.SpriteHelper.fitSprite;
 import static com.mygdx.hiddenmarble.utils.SpriteHelper.getSprite;
 
-import java.util.ArrayList;
+import java.nio.IntBuffer;
 import java.util.List;
 
-import com.badlogic.gdx.audio.Music;
-import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap.Format;
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.Sprite;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Transform;
-import com.mygdx.hiddenmarble.entities.Material;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.Disposable;
 import com.mygdx.hiddenmarble.entities.MazeFixtureDef;
 import com.mygdx.hiddenmarble.utils.Assets;
+import com.mygdx.hiddenmarble.utils.MazeHelper;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeDef;
 import com.mygdx.hiddenmarble.world.GameWorld;
-import com.mygdx.hiddenmarble.world.GameWorldListener;
 
-/** Renders world objects and plays sounds. */
-public class WorldRenderer implements GameWorldListener {
+/**
+ * Renders world objects.
+ * <p>
+ * By default the maze box (corners, back and walls) is baked: drawn once into
+ * a frame buffer whenever the maze changes, then drawn as a single sprite.
+ * <p>
+ * Streamed mazes are never baked. Only the chunks in the view set with
+ * {@link #setView} are drawn, from a fixed number of slots that are refilled
+ * as chunks come into view.
+ */
+public class WorldRenderer implements Disposable {
+    /** The largest side of the baked maze texture in pixels. */
+    private static final int MAX_BAKE_SIZE = 2048;
+    
     private final GameWorld world;
     private final Sprite marble;
     private final Sprite wall;
@@ -27,8 +49,24 @@ public class WorldRenderer implements GameWorldListener {
     private final Sprite back;
     private final Sprite cover;
     private final Sprite exitGuide;
+    private final Sprite[] cornerPieces;
     
-    private List<Vector2> wallPositions;
+    /* Wall tile centers, as flat arrays so drawing walks no objects. */
+    private float[] wallX;
+    private float[] wallY;
+    private int wallCount;
+    private final Vector2 tileCenter;
+    private final Matrix4 bakeProjection;
+    private final Matrix4 savedProjection;
+    private final IntBuffer savedViewport;
+    private final Rectangle view;
+    private final Vector2 mazeOffset;
+    private ChunkSlot[] slots;
+    private boolean streamed;
+    private FrameBuffer mazeBuffer;
+    private Sprite bakedMaze;
+    private boolean baked;
+    private boolean bakeStale;
     private boolean revealed;
     private boolean drawInnerBox;
     private boolean drawCover;
@@ -39,23 +77,105 @@ public class WorldRenderer implements GameWorldListener {
     public WorldRenderer(GameWorld world) {
         this.world = world;
 
+        background = getSprite(Assets.bg, world.getWidth(), world.getHeight());
+        marble = getSprite(Assets.marble, 1.0f, 1.0f);
+        back = getSprite(Assets.back, 1.0f, 1.0f);
+        corners = getSprite(Assets.corners, 1.0f, 1.0f);
+        cover = getSprite(Assets.cover, 1.0f, 1.0f);
+        exitGuide = getSprite(Assets.exit, 1.0f, 1.0f);
+        wall = getSprite(Assets.wall, 1.0f, 1.0f);
+        
+        /* The corners image has one tile of rounded corner in each corner. */
+        int tile = Assets.wall.getRegionWidth();
+        int right = Assets.corners.getRegionWidth() - tile;
+        int bottom = Assets.corners.getRegionHeight() - tile;
+        cornerPieces = new Sprite[] {
+            getSprite(new TextureRegion(Assets.corners, 0, 0, tile, tile),
+                    1.0f, 1.0f),
+            getSprite(new TextureRegion(Assets.corners, right, 0, tile, tile),
+                    1.0f, 1.0f),
+            getSprite(new TextureRegion(Assets.corners, 0, bottom, tile, tile),
+                    1.0f, 1.0f),
+            getSprite(new TextureRegion(Assets.corners, right, bottom, tile,
+                    tile), 1.0f, 1.0f)
+        };
+
+        wallX = new float[0];
+        wallY = new float[0];
+        tileCenter = new Vector2();
+        bakeProjection = new Matrix4();
+        savedProjection = new Matrix4();
+        savedViewport = BufferUtils.newIntBuffer(16);
+        view = new Rectangle(-world.getWidth() / 2.0f, -world.getHeight() / 2.0f,
+                world.getWidth(), world.getHeight());
+        mazeOffset = new Vector2();
+        slots = new ChunkSlot[0];
+        baked = true;
+        
+        reset();
+    }
+    
+    /**
+     * Fits the sprites to the world's current maze and conceals it again.
+     * Call this after {@link GameWorld#reset} instead of creating a new
+     * renderer.
+     */
+    public void reset() {
         float marbleWidth = world.getMarbleWidth();
         float mazeWidth = world.getMazeBoxWidth();
         float mazeHeight = world.getMazeBoxHeight();
         Vector2 exit = world.getMazeExit();
-
-        background = getSprite(Assets.bg, world.getWidth(), world.getHeight());
-        marble = getSprite(Assets.marble, marbleWidth, marbleWidth);
-        back = getSprite(Assets.back, mazeWidth - 2.0f, mazeHeight);
-        corners = getSprite(Assets.corners, mazeWidth, mazeHeight);
-        cover = getSprite(Assets.cover, mazeWidth, mazeHeight);
-        exitGuide = getSprite(Assets.exit, 1.0f, 1.0f, exit.x, exit.y);
-        wall = getSprite(Assets.wall, 1.0f, 1.0f);
-
-        wallPositions = getWallPositions();
-
+        
+        fitSprite(marble, marbleWidth, marbleWidth, 0.0f, 0.0f);
+        fitSprite(back, mazeWidth - 2.0f, mazeHeight, 0.0f, 0.0f);
+        fitSprite(corners, mazeWidth, mazeHeight, 0.0f, 0.0f);
+        fitSprite(cover, mazeWidth, mazeHeight, 0.0f, 0.0f);
+        fitSprite(exitGuide, 1.0f, 1.0f, exit.x, exit.y);
+        
+        MazeDef mazeDef = world.getMazeDef();
+        streamed = mazeDef.isStreamed();
+        if (streamed) {
+            float right = (mazeWidth - 1.0f) / 2.0f;
+            float top = (mazeHeight - 1.0f) / 2.0f;
+            fitSprite(cornerPieces[0], 1.0f, 1.0f, -right, top);
+            fitSprite(cornerPieces[1], 1.0f, 1.0f, right, top);
+            fitSprite(cornerPieces[2], 1.0f, 1.0f, -right, -top);
+            fitSprite(cornerPieces[3], 1.0f, 1.0f, right, -top);
+            mazeOffset.set(right, top);
+            for (int i = 0; i < slots.length; ++i) {
+                slots[i].clear();
+            }
+        } else {
+            fitSprite(background, world.getWidth(), world.getHeight(),
+                    0.0f, 0.0f);
+        }
+        
+        setWallPositions();
+        bakeStale = true;
+        
+        revealed = false;
+        fadeTimer = 0.0f;
         drawInnerBox = false;
         drawCover = true;
+        setCoverAlpha(1.0f);
+    }
+
+    /**
+     * Sets the part of the world that is on screen. Only streamed mazes are
+     * drawn differently for it: the background covers the view and only the
+     * chunks in it are drawn.
+     * 
+     * @param x the x-coordinate of the view's center
+     * @param y the y-coordinate of the view's center
+     * @param width the width of the view
+     * @param height the height of the view
+     */
+    public void setView(float x, float y, float width, float height) {
+        view.setSize(width, height);
+        view.setCenter(x, y);
+        if (streamed) {
+            fitSprite(background, width, height, x, y);
+        }
     }
 
     /**
@@ -65,6 +185,18 @@ public class WorldRenderer implements GameWorldListener {
      * @param batch the batcher
      */
     public void render(float delta, Batch batch) {
+        render(delta, batch, world.getMarbleRenderPosition());
+    }
+
+    /**
+     * Renders sprites with the marble at the specified position instead of
+     * the one read from the world.
+     * 
+     * @param delta time in seconds
+     * @param batch the batcher
+     * @param marblePosition where to draw the marble
+     */
+    public void render(float delta, Batch batch, Vector2 marblePosition) {
         if (fadeTimer > 0.0f) {
             float progress = fadeTimer / fadeDuration;
             float alpha = revealed ? 1.0f - progress : progress;
@@ -82,7 +214,7 @@ public class WorldRenderer implements GameWorldListener {
 
         if (drawInnerBox) {
             renderMazeBox(batch);
-            renderMarble(batch);
+            renderMarble(batch, marblePosition);
         }
 
         if (drawCover) {
@@ -123,58 +255,46 @@ public class WorldRenderer implements GameWorldListener {
         return revealed;
     }
     
-    @Override
-    public void marbleHit(float impulse, Material material) {
-        Sound toPlay = null;
-        switch (material) {
-        case GLASS:
-            toPlay = Assets.hitGlass;
-            break;
-        case WOOD:
-            toPlay = Assets.hitWood;
-            break;
-        default:
-            return;
-        }
-        float volume = Math.min(0.8f, 0.02f * impulse);
-        toPlay.play(volume);
+    /**
+     * Returns true if only the background and the opaque cover are drawn and
+     * no fade is running, so frames look the same until something changes.
+     */
+    public boolean isCoverStatic() {
+        return drawCover && !drawInnerBox && fadeTimer <= 0.0f;
     }
-
-    @Override
-    public void marbleRoll(float len2, Material material) {
-        Music toStop = null;
-        Music toPlay = null;
-        float volume = 0.0f;
-        switch (material) {
-        case GLASS:
-            toStop = Assets.rollWood;
-            toPlay = Assets.rollGlass;
-            volume = len2 * 0.001f;
-            break;
-        case WOOD:
-            toStop = Assets.rollGlass;
-            toPlay = Assets.rollWood;
-            volume = len2 * 0.01f;
-            break;
-        default:
-            return;
+    
+    /**
+     * Sets whether the maze box is drawn from a baked texture or sprite by
+     * sprite. Baking is turned off for good if frame buffers turn out to be
+     * unsupported.
+     */
+    public void setBaked(boolean baked) {
+        this.baked = baked;
+        bakeStale = true;
+        if (!baked) {
+            disposeMazeBuffer();
         }
-        toStop.pause();
-        toPlay.setVolume(Math.min(0.5f, volume));
-        toPlay.play();
-        toPlay.setLooping(true);
     }
     
-    @Override
-    public void marbleStop() {
-        Assets.rollWood.pause();
-        Assets.rollGlass.pause();
+    /** Returns true if the maze box is drawn from a baked texture. */
+    public boolean isBaked() {
+        return baked;
     }
-
+    
+    /**
+     * Bakes the maze box again before it is next drawn. Call this when the
+     * GL context may have been lost, since frame buffer contents are not
+     * restored with it.
+     */
+    public void invalidate() {
+        bakeStale = true;
+    }
+    
     @Override
-    public void mazeSolved() {
+    public void dispose() {
+        disposeMazeBuffer();
     }
-
+    
     private void setCoverAlpha(float alpha) {
         cover.setAlpha(alpha);
         exitGuide.setAlpha(alpha);
@@ -185,33 +305,279 @@ public class WorldRenderer implements GameWorldListener {
         exitGuide.draw(batch);
     }
 
-    private void renderMarble(Batch batch) {
-        Vector2 position = world.getMarblePosition();
+    private void renderMarble(Batch batch, Vector2 position) {
         marble.setCenter(position.x, position.y);
         marble.draw(batch);
     }
 
     private void renderMazeBox(Batch batch) {
+        if (streamed) {
+            drawStreamedMaze(batch);
+            return;
+        }
+        if (baked && bakeStale) {
+            batch.end();
+            bakeMazeBox(batch);
+            batch.begin();
+        }
+        if (baked) {
+            /* The baked texture holds premultiplied colors. */
+            int srcFunc = batch.getBlendSrcFunc();
+            int dstFunc = batch.getBlendDstFunc();
+            batch.setBlendFunction(GL20.GL_ONE, GL20.GL_ONE_MINUS_SRC_ALPHA);
+            bakedMaze.draw(batch);
+            batch.setBlendFunction(srcFunc, dstFunc);
+        } else {
+            drawMazeBox(batch);
+        }
+    }
+    
+    /**
+     * Draws the maze box into the frame buffer, at the wall region's
+     * resolution if it fits. The batch must not be drawing.
+     * <p>
+     * Colors are blended as usual, but alpha is accumulated rather than
+     * multiplied in again, which leaves premultiplied colors in the buffer.
+     * Drawing those with the usual blending would darken the anti-aliased
+     * edges, so the baked texture is drawn with premultiplied blending.
+     */
+    private void bakeMazeBox(Batch batch) {
+        bakeStale = false;
+        float mazeWidth = world.getMazeBoxWidth();
+        float mazeHeight = world.getMazeBoxHeight();
+        float scale = Assets.wall.getRegionWidth();
+        float side = Math.max(mazeWidth, mazeHeight) * scale;
+        if (side > MAX_BAKE_SIZE) {
+            scale *= MAX_BAKE_SIZE / side;
+        }
+        int width = (int) Math.ceil(mazeWidth * scale);
+        int height = (int) Math.ceil(mazeHeight * scale);
+        
+        if (mazeBuffer == null || mazeBuffer.getWidth() != width
+                || mazeBuffer.getHeight() != height) {
+            disposeMazeBuffer();
+            try {
+                mazeBuffer = new FrameBuffer(Format.RGBA8888, width, height, false);
+            } catch (IllegalStateException e) {
+                baked = false; // Frame buffers unsupported; draws sprites.
+                return;
+            }
+            TextureRegion region = new TextureRegion(mazeBuffer.getColorBufferTexture());
+            region.flip(false, true);
+            bakedMaze = new Sprite(region);
+        }
+        fitSprite(bakedMaze, mazeWidth, mazeHeight, 0.0f, 0.0f);
+        
+        /* Ending the frame buffer resets the viewport to the full screen. */
+        savedViewport.clear();
+        Gdx.gl.glGetIntegerv(GL20.GL_VIEWPORT, savedViewport);
+        savedProjection.set(batch.getProjectionMatrix());
+        bakeProjection.setToOrtho2D(-mazeWidth / 2.0f, -mazeHeight / 2.0f,
+                mazeWidth, mazeHeight);
+        
+        mazeBuffer.begin();
+        Gdx.gl.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+        batch.setProjectionMatrix(bakeProjection);
+        int srcFunc = batch.getBlendSrcFunc();
+        int dstFunc = batch.getBlendDstFunc();
+        batch.setBlendFunction(-1, -1); // Leaves the blend function to GL.
+        Gdx.gl.glBlendFuncSeparate(GL20.GL_SRC_ALPHA,
+                GL20.GL_ONE_MINUS_SRC_ALPHA, GL20.GL_ONE,
+                GL20.GL_ONE_MINUS_SRC_ALPHA);
+        batch.begin();
+        drawMazeBox(batch);
+        batch.end();
+        batch.setBlendFunction(srcFunc, dstFunc);
+        mazeBuffer.end();
+        
+        Gdx.gl.glViewport(savedViewport.get(0), savedViewport.get(1),
+                savedViewport.get(2), savedViewport.get(3));
+        batch.setProjectionMatrix(savedProjection);
+    }
+    
+    private void disposeMazeBuffer() {
+        if (mazeBuffer != null) {
+            mazeBuffer.dispose();
+            mazeBuffer = null;
+            bakedMaze = null;
+        }
+    }
+
+    private void drawMazeBox(Batch batch) {
         corners.draw(batch);
         back.draw(batch);
 
-        for (Vector2 v : wallPositions) {
-            wall.setCenter(v.x, v.y);
+        for (int i = 0; i < wallCount; ++i) {
+            wall.setCenter(wallX[i], wallY[i]);
             wall.draw(batch);
         }
     }
 
-    private List<Vector2> getWallPositions() {
-        List<Vector2> ret = new ArrayList<Vector2>();
+    /**
+     * Draws the corners, then the back and the walls of each chunk in view.
+     * Chunks that have just come into view take the slot of one that has
+     * left it.
+     */
+    private void drawStreamedMaze(Batch batch) {
+        for (int i = 0; i < cornerPieces.length; ++i) {
+            cornerPieces[i].draw(batch);
+        }
+        
+        /* Enough slots for every chunk the view can overlap at once. */
+        int slotCount = (MathUtils.ceil(view.width / CHUNK_SIZE) + 1)
+                * (MathUtils.ceil(view.height / CHUNK_SIZE) + 1);
+        if (slots.length < slotCount) {
+            slots = new ChunkSlot[slotCount];
+            for (int i = 0; i < slots.length; ++i) {
+                slots[i] = new ChunkSlot();
+            }
+        }
+        
+        MazeDef mazeDef = world.getMazeDef();
+        int width = mazeDef.maze.getWidth();
+        int height = mazeDef.maze.getHeight();
+        
+        /* The tiles at the view's edges, then their chunks. */
+        int left = MathUtils.floor(view.x + mazeOffset.x + 0.5f);
+        int right = MathUtils.floor(view.x + view.width + mazeOffset.x + 0.5f);
+        int top = MathUtils.floor(mazeOffset.y + 0.5f - view.y - view.height);
+        int bottom = MathUtils.floor(mazeOffset.y + 0.5f - view.y);
+        if (right < 0 || left >= width || bottom < 0 || top >= height) {
+            return;
+        }
+        left = Math.max(0, left) / CHUNK_SIZE;
+        right = Math.min(width - 1, right) / CHUNK_SIZE;
+        top = Math.max(0, top) / CHUNK_SIZE;
+        bottom = Math.min(height - 1, bottom) / CHUNK_SIZE;
+        
+        for (int i = 0; i < slots.length; ++i) {
+            ChunkSlot slot = slots[i];
+            if (slot.x < left || slot.x > right
+                    || slot.y < top || slot.y > bottom) {
+                slot.clear();
+            }
+        }
+        for (int y = top; y <= bottom; ++y) {
+            for (int x = left; x <= right; ++x) {
+                ChunkSlot slot = findSlot(x, y);
+                if (slot == null) {
+                    slot = findSlot(-1, -1);
+                    slot.fill(mazeDef, x, y, mazeOffset);
+                }
+                drawChunk(batch, slot, width, height);
+            }
+        }
+    }
+    
+    private void drawChunk(Batch batch, ChunkSlot slot, int width,
+            int height) {
+        
+        /* The back leaves out the outermost columns, like the baked one. */
+        int left = Math.max(1, slot.x * CHUNK_SIZE);
+        int right = Math.min(width - 1, (slot.x + 1) * CHUNK_SIZE);
+        int top = slot.y * CHUNK_SIZE;
+        int bottom = Math.min(height, top + CHUNK_SIZE);
+        if (left < right) {
+            back.setBounds(left - mazeOffset.x - 0.5f,
+                    mazeOffset.y + 0.5f - bottom, right - left, bottom - top);
+            back.draw(batch);
+        }
+        
+        for (int i = 0; i < slot.wallCount; ++i) {
+            wall.setCenter(slot.wallX[i], slot.wallY[i]);
+            wall.draw(batch);
+        }
+    }
+    
+    /** Returns the slot holding the specified chunk, or null if none does. */
+    private ChunkSlot findSlot(int x, int y) {
+        for (int i = 0; i < slots.length; ++i) {
+            if (slots[i].x == x && slots[i].y == y) {
+                return slots[i];
+            }
+        }
+        return null;
+    }
+
+    private void setWallPositions() {
         Transform transform = world.getMazeTransform();
-        for (MazeFixtureDef fd : world.getMazeFixtureDefs()) {
+        List<MazeFixtureDef> defs = world.getMazeFixtureDefs();
+        
+        int count = 0;
+        for (int k = 0; k < defs.size(); ++k) {
+            MazeFixtureDef fd = defs.get(k);
+            if (!fd.isCorner && !fd.isSensor) {
+                count += (int) fd.width * (int) fd.height;
+            }
+        }
+        if (wallX.length < count) {
+            wallX = new float[count];
+            wallY = new float[count];
+        }
+        
+        wallCount = 0;
+        for (int k = 0; k < defs.size(); ++k) {
+            MazeFixtureDef fd = defs.get(k);
             if (fd.isCorner || fd.isSensor) {
                 continue;
             }
-            Vector2 v = new Vector2(fd.center);
-            transform.mul(v);
-            ret.add(v);
+            /* Walls are merged rectangles; one sprite per tile covered. */
+            float left = fd.center.x - (fd.width - 1.0f) / 2.0f;
+            float bottom = fd.center.y - (fd.height - 1.0f) / 2.0f;
+            for (int j = 0; j < fd.height; ++j) {
+                for (int i = 0; i < fd.width; ++i) {
+                    tileCenter.set(left + i, bottom + j);
+                    transform.mul(tileCenter);
+                    wallX[wallCount] = tileCenter.x;
+                    wallY[wallCount] = tileCenter.y;
+                    ++wallCount;
+                }
+            }
+        }
+    }
+    
+    /** The wall tile centers of one chunk of a streamed maze. */
+    private static class ChunkSlot {
+        final float[] wallX;
+        final float[] wallY;
+        int wallCount;
+        int x;
+        int y;
+        
+        ChunkSlot() {
+            wallX = new float[CHUNK_SIZE * CHUNK_SIZE];
+            wallY = new float[CHUNK_SIZE * CHUNK_SIZE];
+            clear();
+        }
+        
+        void clear() {
+            wallCount = 0;
+            x = -1;
+            y = -1;
+        }
+        
+        /**
+         * Fills the slot with the walls of the specified chunk. Wall
+         * rectangles are in maze box body coordinates, which are the world's
+         * shifted by the offset.
+         */
+        void fill(MazeDef mazeDef, int x, int y, Vector2 offset) {
+            this.x = x;
+            this.y = y;
+            wallCount = 0;
+            List<Rectangle> walls =
+                    MazeHelper.getChunkWallRectangles(mazeDef, x, y);
+            for (int k = 0; k < walls.size(); ++k) {
+                Rectangle r = walls.get(k);
+                for (int j = 0; j < r.height; ++j) {
+                    for (int i = 0; i < r.width; ++i) {
+                        wallX[wallCount] = r.x + 0.5f + i - offset.x;
+                        wallY[wallCount] = r.y + 0.5f + j - offset.y;
+                        ++wallCount;
+                    }
+                }
+            }
         }
-        return ret;
     }
 }
@@ -1,38 +1,151 @@
 package com.mygdx.hiddenmarble.utils;
 
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.audio.Music;
 import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap.Format;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.TextureData;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas.TextureAtlasData;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas.TextureAtlasData.Page;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.ETC1TextureData;
 import com.badlogic.gdx.scenes.scene2d.ui.Skin;
 
 /** Manages disposable assets. */
 public final class Assets {
-    public static Texture bg;
-    public static Texture cover;
-    public static Texture marble;
-    public static Texture wall;
-    public static Texture back;
-    public static Texture corners;
-    public static Texture exit;
-    public static Music rollWood;
-    public static Music rollGlass;
+    public static TextureRegion bg;
+    public static TextureRegion cover;
+    public static TextureRegion marble;
+    public static TextureRegion wall;
+    public static TextureRegion back;
+    public static TextureRegion corners;
+    public static TextureRegion exit;
+    public static Sound rollWood;
+    public static Sound rollGlass;
     public static Sound hitWood;
     public static Sound hitGlass;
     public static Sound magic;
     public static Skin uiSkin;
     
+    /*
+     * The sprite atlas comes in scaled variants, largest first, each with an
+     * ETC1 version whose opaque page is compressed (see packTextures).
+     */
+    private static final String[] SPRITE_VARIANTS = {
+        "data/sprites_full", "data/sprites_half"
+    };
+    private static final float[] SPRITE_SCALES = { 1.0f, 0.5f };
+    private static final String ETC1_EXTENSION =
+            "GL_OES_compressed_ETC1_RGB8_texture";
+    
+    /* Drawing the game needs these; everything else may come later. */
+    private static final String SKIN = "data/uiskin.json";
+    private static String sprites;
+    
     private static AssetManager manager;
+    private static int textureBudget;
+    private static boolean graphicsLoaded;
+    private static boolean audioLoaded;
     
     private Assets() {
     }
     
-    /** Loads all assets. */
-    public static void init() {
+    /**
+     * Queues all assets for loading, the ones needed to draw the game first
+     * and sounds last. Call {@link #update} until it returns true.
+     * <p>
+     * The sprites are loaded at the smallest scale that still looks sharp on
+     * the screen, or smaller if that would not fit the texture budget. Once
+     * they are loaded, the texture memory in use is logged.
+     * 
+     * @param screenScale screen pixels per pixel of the game's resolution
+     * @param textureBudget texture memory the game should stay within, in
+     *        bytes
+     */
+    public static void load(float screenScale, int textureBudget) {
+        Assets.textureBudget = textureBudget;
+        sprites = chooseSprites(screenScale, textureBudget);
         manager = new AssetManager();
-        load();
-        manager.finishLoading();
-        initAssets();
+        graphicsLoaded = false;
+        audioLoaded = false;
+        manager.load(sprites, TextureAtlas.class);
+        manager.load(SKIN, Skin.class);
+        /* The roll loops are short enough to keep decoded. */
+        manager.load("data/roll_wood.ogg", Sound.class);
+        manager.load("data/roll_glass.ogg", Sound.class);
+        manager.load("data/hit_wood.ogg", Sound.class);
+        manager.load("data/hit_glass.ogg", Sound.class);
+        manager.load("data/magic.ogg", Sound.class);
+    }
+    
+    /**
+     * Loads queued assets for about the specified time. Assets become
+     * available in groups; see {@link #isGraphicsLoaded} and
+     * {@link #isAudioLoaded}.
+     * 
+     * @param  millis how long to block at most, roughly
+     * @return true if all assets are loaded
+     */
+    public static boolean update(int millis) {
+        boolean done = manager.update(millis);
+        if (!graphicsLoaded && manager.isLoaded(sprites)
+                && manager.isLoaded(SKIN)) {
+
+            initGraphics();
+            graphicsLoaded = true;
+            logTextureMemory();
+        }
+        if (done && !audioLoaded) {
+            initAudio();
+            audioLoaded = true;
+        }
+        return done;
+    }
+    
+    /** Returns the loaded fraction of the assets needed to draw the game. */
+    public static float getGraphicsProgress() {
+        int loaded = 0;
+        if (manager.isLoaded(sprites)) {
+            ++loaded;
+        }
+        if (manager.isLoaded(SKIN)) {
+            ++loaded;
+        }
+        return loaded / 2.0f;
+    }
+    
+    /**
+     * Returns the GPU memory taken up by the loaded textures in bytes, going
+     * by their sizes and formats. Drivers may pad or convert them.
+     */
+    public static int getTextureMemory() {
+        int total = 0;
+        if (manager.isLoaded(sprites)) {
+            TextureAtlas atlas = manager.get(sprites);
+            for (Texture texture : atlas.getTextures()) {
+                total += textureMemory(texture);
+            }
+        }
+        if (manager.isLoaded(SKIN)) {
+            Skin skin = manager.get(SKIN);
+            for (Texture texture : skin.getAtlas().getTextures()) {
+                total += textureMemory(texture);
+            }
+        }
+        return total;
+    }
+    
+    /** Returns true if the textures and the UI skin can be used. */
+    public static boolean isGraphicsLoaded() {
+        return graphicsLoaded;
+    }
+    
+    /** Returns true if the sounds can be used. */
+    public static boolean isAudioLoaded() {
+        return audioLoaded;
     }
     
     /** Disposes all assets. */
@@ -40,10 +153,15 @@ public final class Assets {
         if (manager != null) {
             manager.dispose();
         }
+        graphicsLoaded = false;
+        audioLoaded = false;
     }
     
     /** Stops all sound/music. */
     public static void stopSound() {
+        if (!audioLoaded) {
+            return;
+        }
         rollWood.stop();
         rollGlass.stop();
         hitWood.stop();
@@ -51,35 +169,105 @@ public final class Assets {
         magic.stop();
     }
     
-    private static void load() {
-        manager.load("data/background.png", Texture.class);
-        manager.load("data/cover.png", Texture.class);
-        manager.load("data/marble.png", Texture.class);
-        manager.load("data/wall.png", Texture.class);
-        manager.load("data/back.png", Texture.class);
-        manager.load("data/corners.png", Texture.class);
-        manager.load("data/exit.png", Texture.class);
-        manager.load("data/roll_wood.ogg", Music.class);
-        manager.load("data/roll_glass.ogg", Music.class);
-        manager.load("data/hit_wood.ogg", Sound.class);
-        manager.load("data/hit_glass.ogg", Sound.class);
-        manager.load("data/magic.ogg", Sound.class);
-        manager.load("data/uiskin.json", Skin.class);
+    /**
+     * Picks the sprite atlas variant: the smallest scale not below the
+     * screen's, stepping down further while the atlas is over budget.
+     */
+    private static String chooseSprites(float screenScale, int budget) {
+        boolean etc1 = Gdx.graphics.supportsExtension(ETC1_EXTENSION);
+        int i = 0;
+        while (i + 1 < SPRITE_SCALES.length
+                && SPRITE_SCALES[i + 1] >= screenScale) {
+
+            ++i;
+        }
+        String file = spriteFile(i, etc1);
+        while (i + 1 < SPRITE_SCALES.length && atlasMemory(file) > budget) {
+            file = spriteFile(++i, etc1);
+        }
+        return file;
+    }
+    
+    private static String spriteFile(int variant, boolean etc1) {
+        return SPRITE_VARIANTS[variant] + (etc1 ? "_etc1.atlas" : ".atlas");
+    }
+    
+    /** Estimates the texture memory of an atlas from its page sizes. */
+    private static int atlasMemory(String file) {
+        FileHandle handle = Gdx.files.internal(file);
+        TextureAtlasData data =
+                new TextureAtlasData(handle, handle.parent(), false);
+        int total = 0;
+        for (Page page : data.getPages()) {
+            int pixels = (int) page.width * (int) page.height;
+            if (page.textureFile.extension().equals("etc1")) {
+                total += pixels / 2;
+            } else {
+                total += pixels * bytesPerPixel(page.format);
+            }
+        }
+        return total;
+    }
+    
+    private static int textureMemory(Texture texture) {
+        TextureData data = texture.getTextureData();
+        int pixels = texture.getWidth() * texture.getHeight();
+        if (data instanceof ETC1TextureData
+                && Gdx.graphics.supportsExtension(ETC1_EXTENSION)) {
+
+            return pixels / 2; // 4 bits per pixel.
+        }
+        return pixels * bytesPerPixel(data.getFormat());
+    }
+    
+    private static int bytesPerPixel(Format format) {
+        switch (format) {
+        case Alpha:
+        case Intensity:
+            return 1;
+        case LuminanceAlpha:
+        case RGB565:
+        case RGBA4444:
+            return 2;
+        case RGB888:
+            return 3;
+        default:
+            return 4;
+        }
+    }
+    
+    private static void logTextureMemory() {
+        int memory = getTextureMemory();
+        String message = sprites + ": textures use " + memory / 1024
+                + " KiB of " + textureBudget / 1024 + " KiB";
+        if (memory > textureBudget) {
+            Gdx.app.error("Assets", message);
+        } else {
+            Gdx.app.log("Assets", message);
+        }
+    }
+    
+    private static void initGraphics() {
+        /*
+         * Opaque sprites share one page and the rest another, so drawing
+         * either group needs no flushes.
+         */
+        TextureAtlas atlas = manager.get(sprites);
+        bg = atlas.findRegion("opaque/background");
+        cover = atlas.findRegion("cover");
+        marble = atlas.findRegion("marble");
+        back = atlas.findRegion("opaque/back");
+        corners = atlas.findRegion("corners");
+        wall = atlas.findRegion("opaque/wall");
+        exit = atlas.findRegion("exit");
+        uiSkin = manager.get(SKIN);
     }
     
-    private static void initAssets() {
-        bg = manager.get("data/background.png");
-        cover = manager.get("data/cover.png");
-        marble = manager.get("data/marble.png");
-        back = manager.get("data/back.png");
-        corners = manager.get("data/corners.png");
-        wall = manager.get("data/wall.png");
-        exit = manager.get("data/exit.png");
+    private static void initAudio() {
         rollWood = manager.get("data/roll_wood.ogg");
         rollGlass = manager.get("data/roll_glass.ogg");
         hitWood = manager.get("data/hit_wood.ogg");
         hitGlass = manager.get("data/hit_glass.ogg");
         magic = manager.get("data/magic.ogg");
-        uiSkin = manager.get("data/uiskin.json");
     }
 }
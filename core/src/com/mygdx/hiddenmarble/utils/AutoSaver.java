@@ -0,0 +1,120 @@
+package com.mygdx.hiddenmarble.utils;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Writes save data on a background thread so that saving never stalls a
+ * frame. Snapshots are encoded by the caller (see {@link SaveState#encode})
+ * and handed over with {@link #submit}; if the writer is still busy, only
+ * the most recent snapshot is kept.
+ */
+public class AutoSaver implements Disposable {
+    private final SaveState save;
+    private final Object lock;
+    private final Thread worker;
+
+    /* Guarded by lock. */
+    private byte[] pending;
+    private boolean writing;
+
+    /** Creates an auto saver for the specified save state and starts it. */
+    public AutoSaver(SaveState save) {
+        if (save == null) {
+            throw new NullPointerException();
+        }
+        this.save = save;
+        lock = new Object();
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        write(next());
+                    }
+                } catch (InterruptedException e) {
+                    // Disposed.
+                }
+            }
+        }, "autosave");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues a snapshot for writing, replacing any snapshot not written yet.
+     * May be called from any thread.
+     *
+     * @throws NullPointerException if the snapshot is null
+     */
+    public void submit(byte[] snapshot) {
+        if (snapshot == null) {
+            throw new NullPointerException();
+        }
+        synchronized (lock) {
+            pending = snapshot;
+            lock.notifyAll();
+        }
+    }
+
+    /** Waits until every submitted snapshot has been written. */
+    public void flush() {
+        boolean interrupted = false;
+        synchronized (lock) {
+            while (pending != null || writing) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drops the snapshot not written yet, waits for a write in progress and
+     * erases the save file.
+     */
+    public void erase() {
+        synchronized (lock) {
+            pending = null;
+        }
+        flush();
+        save.erase();
+    }
+
+    /** Writes what is pending and stops the writer thread. */
+    @Override
+    public void dispose() {
+        flush();
+        worker.interrupt();
+    }
+
+    private byte[] next() throws InterruptedException {
+        synchronized (lock) {
+            while (pending == null) {
+                lock.wait();
+            }
+            byte[] ret = pending;
+            pending = null;
+            writing = true;
+            return ret;
+        }
+    }
+
+    private void write(byte[] snapshot) {
+        try {
+            save.write(snapshot);
+        } catch (RuntimeException e) {
+            Gdx.app.error("AutoSaver", "Could not save", e);
+        } finally {
+            synchronized (lock) {
+                writing = false;
+                lock.notifyAll();
+            }
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package com.mygdx.hiddenmarble.utils;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.BodyDef;
@@ -13,24 +14,29 @@ import com.badlogic.gdx.physics.box2d.CircleShape;
 import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.Shape;
 import com.badlogic.gdx.physics.box2d.World;
+import com.mygdx.hiddenmarble.entities.FixtureData;
 import com.mygdx.hiddenmarble.entities.MazeFixtureDef;
 import com.mygdx.hiddenmarble.utils.MazeHelper.MazeDef;
 
 import maze.ImmutablePoint;
 import maze.Point;
 
-/** Creates Box2D bodies for the game entities. */
+/**
+ * Creates Box2D bodies for the game entities. The material constants are
+ * shared with the grid physics engine.
+ */
 public final class BodyHelper {
-    private static final float BORDER_FRICTION = 0.8f;
-    private static final float BORDER_RESTITUTION = 0.1f;
+    public static final float BORDER_FRICTION = 0.8f;
+    public static final float BORDER_RESTITUTION = 0.1f;
 
-    private static final float MARBLE_DENSITY = 1.0f;
-    private static final float MARBLE_FRICTION = 0.5f;
-    private static final float MARBLE_RESTITUTION = 0.0f;
+    public static final float MARBLE_DENSITY = 1.0f;
+    public static final float MARBLE_FRICTION = 0.5f;
+    public static final float MARBLE_RESTITUTION = 0.0f;
 
-    private static final float MAZE_BOX_FRICTION = 0.5f;
-    private static final float MAZE_BOX_RESTITUTION = 0.1f;
+    public static final float MAZE_BOX_FRICTION = 0.5f;
+    public static final float MAZE_BOX_RESTITUTION = 0.1f;
 
     private BodyHelper() {
     }
@@ -62,7 +68,8 @@ public final class BodyHelper {
         fixtureDef.friction = BORDER_FRICTION;
         fixtureDef.restitution = BORDER_RESTITUTION;
         
-        body.createFixture(fixtureDef);
+        Fixture fixture = body.createFixture(fixtureDef);
+        fixture.setUserData(FixtureData.BORDERS);
 
         chain.dispose();
 
@@ -93,7 +100,8 @@ public final class BodyHelper {
         fixtureDef.restitution = MARBLE_RESTITUTION;
 
         Body body = world.createBody(bodyDef);
-        body.createFixture(fixtureDef);
+        Fixture fixture = body.createFixture(fixtureDef);
+        fixture.setUserData(FixtureData.MARBLE);
 
         circle.dispose();
 
@@ -101,53 +109,119 @@ public final class BodyHelper {
     }
 
     /**
-     * Creates a body for the maze box.
+     * Creates a body for the maze box, with one fixture per definition from
+     * {@link #getMazeFixtureDefs}.
      * 
      * @param  world the Box2D world
      * @param  mazeDef the maze definition
      * @return a new Box2D body
      */
     public static Body getMazeBoxBody(World world, MazeDef mazeDef) {
+        Body body = getEmptyMazeBoxBody(world, mazeDef);
+        for (MazeFixtureDef def : getMazeFixtureDefs(mazeDef)) {
+            createMazeFixture(body, mazeDef, def);
+        }
+        return body;
+    }
+    
+    /**
+     * Creates a maze box body without fixtures, placed where
+     * {@link #getMazeBoxBody} would place it.
+     * 
+     * @param  world the Box2D world
+     * @param  mazeDef the maze definition
+     * @return a new Box2D body
+     */
+    public static Body getEmptyMazeBoxBody(World world, MazeDef mazeDef) {
+        BodyDef bodyDef = new BodyDef();
+        bodyDef.position.sub(getMazeBoxOffset(mazeDef));
+        return world.createBody(bodyDef);
+    }
+    
+    /**
+     * Adds a fixture to a maze box body. The definition becomes the fixture's
+     * user data.
+     * 
+     * @param  body the maze box body
+     * @param  mazeDef the maze definition
+     * @param  def the fixture definition
+     * @return the new fixture
+     */
+    public static Fixture createMazeFixture(Body body, MazeDef mazeDef,
+            MazeFixtureDef def) {
+        
         int width = mazeDef.maze.getWidth();
         int height = mazeDef.maze.getHeight();
         
-        Vector2 offset = new Vector2(width, height);
-        offset.scl(0.5f);
-        offset.sub(0.5f, 0.5f);
-        
-        BodyDef bodyDef = new BodyDef();
-        bodyDef.position.sub(offset);
-        Body body = world.createBody(bodyDef);
-
-        Map<Point, Fixture> fixtureMap =
-                new HashMap<Point, Fixture>(height * width);
+        Shape shape;
+        if (def.isCorner) {
+            Point pos = new ImmutablePoint((int) def.center.x,
+                    height - (int) def.center.y - 1);
+            shape = createCorner(pos, def.center, 1.0f, width, height);
+        } else {
+            PolygonShape box = new PolygonShape();
+            box.setAsBox(def.width / 2.0f, def.height / 2.0f, def.center, 0.0f);
+            shape = box;
+        }
         
-        /* Sets up the maze wall blocks. */
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                if (mazeDef.maze.isWall(x, y)) {
-                    PolygonShape square = new PolygonShape();
-                    Vector2 center = new Vector2(x, (height - y - 1));
-                    square.setAsBox(0.5f, 0.5f, center, 0.0f);
-                    
-                    FixtureDef fixtureDef = new FixtureDef();
-                    fixtureDef.shape = square;
-                    fixtureDef.friction = MAZE_BOX_FRICTION;
-                    fixtureDef.restitution = MAZE_BOX_RESTITUTION;
-                    
-                    Fixture fixture = body.createFixture(fixtureDef);
-                    fixture.setUserData(new MazeFixtureDef(center, false, false));
-                    
-                    fixtureMap.put(new ImmutablePoint(x, y), fixture);
-                    
-                    square.dispose();
-                }
-            }
+        FixtureDef fixtureDef = new FixtureDef();
+        fixtureDef.shape = shape;
+        if (!def.isSensor) {
+            fixtureDef.friction = MAZE_BOX_FRICTION;
+            fixtureDef.restitution = MAZE_BOX_RESTITUTION;
         }
         
-        /* Removes the fixture at the exit position. */
-        Fixture exitFixture = fixtureMap.get(mazeDef.exit);
-        body.destroyFixture(exitFixture);
+        Fixture fixture = body.createFixture(fixtureDef);
+        fixture.setSensor(def.isSensor);
+        fixture.setUserData(def);
+        
+        shape.dispose();
+        return fixture;
+    }
+    
+    /**
+     * Returns the maze box fixture definitions in maze box body coordinates:
+     * the merged walls, then the four rounded corners, then the sensor area
+     * covering the inside of the maze.
+     * 
+     * @param  mazeDef the maze definition
+     * @return a new list of fixture definitions
+     */
+    public static List<MazeFixtureDef> getMazeFixtureDefs(MazeDef mazeDef) {
+        List<MazeFixtureDef> ret =
+                getWallFixtureDefs(mazeDef.getWallRectangles());
+        ret.addAll(getMazeFrameFixtureDefs(mazeDef));
+        return ret;
+    }
+    
+    /**
+     * Returns the wall fixture definitions of one chunk of a maze. See
+     * {@link MazeHelper#getChunkWallRectangles}.
+     * 
+     * @param  mazeDef the maze definition
+     * @param  chunkX the column of the chunk
+     * @param  chunkY the row of the chunk, counted from the top
+     * @return a new list of fixture definitions
+     */
+    public static List<MazeFixtureDef> getChunkFixtureDefs(MazeDef mazeDef,
+            int chunkX, int chunkY) {
+        
+        return getWallFixtureDefs(
+                MazeHelper.getChunkWallRectangles(mazeDef, chunkX, chunkY));
+    }
+    
+    /**
+     * Returns the fixture definitions a maze box has whatever its walls: the
+     * four rounded corners, then the sensor area covering the inside of the
+     * maze.
+     * 
+     * @param  mazeDef the maze definition
+     * @return a new list of fixture definitions
+     */
+    public static List<MazeFixtureDef> getMazeFrameFixtureDefs(MazeDef mazeDef) {
+        int width = mazeDef.maze.getWidth();
+        int height = mazeDef.maze.getHeight();
+        List<MazeFixtureDef> ret = new ArrayList<MazeFixtureDef>();
         
         Point[] corners = new Point[4];
         corners[0] = new ImmutablePoint(0, 0);
@@ -155,40 +229,41 @@ public final class BodyHelper {
         corners[2] = new ImmutablePoint(width - 1, height - 1);
         corners[3] = new ImmutablePoint(width - 1, 0);
         
-        /* Sets up the corners. */
+        /* The corners. */
         for (int i = 0; i < corners.length; ++i) {
             Point pos = corners[i];
-            Fixture toDestroy = fixtureMap.get(pos);
-            Vector2 center = ((MazeFixtureDef)toDestroy.getUserData()).center;
-            body.destroyFixture(toDestroy);
-            
-            PolygonShape corner = createCorner(pos, center, 1.0f, width, height);
-            
-            FixtureDef fixtureDef = new FixtureDef();
-            fixtureDef.shape = corner;
-            fixtureDef.friction = MAZE_BOX_FRICTION;
-            fixtureDef.restitution = MAZE_BOX_RESTITUTION;
-            
-            Fixture fixture = body.createFixture(fixtureDef);
-            fixture.setUserData(new MazeFixtureDef(center, true, false));
-            
-            corner.dispose();
+            Vector2 center = new Vector2(pos.getX(), height - pos.getY() - 1);
+            ret.add(new MazeFixtureDef(center, true, false));
         }
         
-        PolygonShape rectangle = new PolygonShape();
-        rectangle.setAsBox((width - 2) / 2.0f, (height - 1) / 2.0f, offset, 0.0f);
-        
-        FixtureDef fixtureDef = new FixtureDef();
-        fixtureDef.shape = rectangle;
-
-        /* Sets up the sensor area. */
-        Fixture fixture = body.createFixture(fixtureDef);
-        fixture.setSensor(true);
-        fixture.setUserData(new MazeFixtureDef(offset, false, true));
-        
-        rectangle.dispose();
+        /* The sensor area. */
+        ret.add(new MazeFixtureDef(getMazeBoxOffset(mazeDef), width - 2,
+                height - 1, false, true));
+        return ret;
+    }
+    
+    /** Returns one wall fixture definition per rectangle. */
+    private static List<MazeFixtureDef> getWallFixtureDefs(
+            List<Rectangle> rectangles) {
         
-        return body;
+        List<MazeFixtureDef> ret = new ArrayList<MazeFixtureDef>();
+        for (Rectangle r : rectangles) {
+            Vector2 center = r.getCenter(new Vector2());
+            ret.add(new MazeFixtureDef(center, r.width, r.height, false, false));
+        }
+        return ret;
+    }
+    
+    /**
+     * Returns the center of the maze box in body coordinates, which is also
+     * how far the body is moved so that the box is centered on the origin.
+     */
+    public static Vector2 getMazeBoxOffset(MazeDef mazeDef) {
+        Vector2 offset = new Vector2(mazeDef.maze.getWidth(),
+                mazeDef.maze.getHeight());
+        offset.scl(0.5f);
+        offset.sub(0.5f, 0.5f);
+        return offset;
     }
     
     /**
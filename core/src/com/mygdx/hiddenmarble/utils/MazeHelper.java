@@ -1,31 +1,60 @@
 package com.mygdx.hiddenmarble.utils;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 import maze.ImmutablePoint;
-import maze.Maze;
 import maze.Point;
-import maze.RecursiveBacktracker;
 import maze.TileMaze;
 
 import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.math.Rectangle;
 
 /**
  * Creates mazes. The mazes will have predetermined exit positions but will vary
- * otherwise.
+ * otherwise. Every maze comes from a seed, from which it can be recreated.
  */
 public final class MazeHelper {
-    private static final int SMALL_WIDTH = 4;
-    private static final int SMALL_HEIGHT = 5;
-
-    private static final int MEDIUM_WIDTH = 5;
-    private static final int MEDIUM_HEIGHT = 6;
-
-    private static final int LARGE_WIDTH = 7;
-    private static final int LARGE_HEIGHT = 8;
-
+    /** The side of a maze chunk in tiles. */
+    public static final int CHUNK_SIZE = 16;
+    
+    /** Mazes with more tiles than this on either side are streamed. */
+    private static final int MAX_UNSTREAMED_SIZE = 64;
+    
+    /** The largest side in cells of a seeded maze read from saved data. */
+    private static final int MAX_SEEDED_SIZE = Math.max(
+            MazeSize.EXPEDITION.width, MazeSize.EXPEDITION.height);
+    
     private MazeHelper() {
     }
+    
+    /**
+     * The maze sizes offered by the game, in cells. Expedition mazes are far
+     * larger than the screen and are streamed in chunks.
+     */
+    public enum MazeSize {
+        SMALL(4, 5), MEDIUM(5, 6), LARGE(7, 8), EXPEDITION(200, 200);
+        
+        public final int width;
+        public final int height;
+        
+        MazeSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
 
     /**
      * Creates a 4 x 5 maze (9 x 11 in tile representation).
@@ -33,7 +62,7 @@ public final class MazeHelper {
      * @return maze definition (tile maze object and start/exit positions)
      */
     public static MazeDef getSmallMaze() {
-        return getMaze(SMALL_WIDTH, SMALL_HEIGHT);
+        return getMaze(MazeSize.SMALL.width, MazeSize.SMALL.height);
     }
 
     /**
@@ -42,7 +71,7 @@ public final class MazeHelper {
      * @return maze definition (tile maze object and start/exit positions)
      */
     public static MazeDef getMediumMaze() {
-        return getMaze(MEDIUM_WIDTH, MEDIUM_HEIGHT);
+        return getMaze(MazeSize.MEDIUM.width, MazeSize.MEDIUM.height);
     }
 
     /**
@@ -51,25 +80,149 @@ public final class MazeHelper {
      * @return maze definition (tile maze object and start/exit positions)
      */
     public static MazeDef getLargeMaze() {
-        return getMaze(LARGE_WIDTH, LARGE_HEIGHT);
+        return getMaze(MazeSize.LARGE.width, MazeSize.LARGE.height);
     }
 
     /**
-     * Creates a maze with the specified dimensions.
+     * Creates a maze with the specified dimensions from a random seed.
      * 
      * @param  width the width of the maze
      * @param  height the height of the maze
      * @return maze definition
      */
     private static MazeDef getMaze(int width, int height) {
-        Point start = new ImmutablePoint(MathUtils.random(0, width - 1), 0);
+        return getMaze(width, height, MathUtils.random.nextLong());
+    }
+
+    /**
+     * Creates a maze with the specified dimensions. The same arguments always
+     * produce the same maze and start position.
+     * 
+     * @param  width the width of the maze
+     * @param  height the height of the maze
+     * @param  seed the random seed
+     * @return maze definition
+     */
+    public static MazeDef getMaze(int width, int height, long seed) {
+        Random rnd = new RandomXS128(seed);
+        Point start = new ImmutablePoint(rnd.nextInt(width), 0);
         Point startTile = getTileAt(start);
         Point bottom = new ImmutablePoint(width / 2, height - 1);
         Point bottomTile = getTileAt(bottom);
         Point exitTile = new ImmutablePoint(bottomTile.getX(), bottomTile.getY() + 1);
-        Maze maze = new RecursiveBacktracker(width, height);
-        maze.generate();
-        return new MazeDef(new TileMaze(maze), startTile, exitTile);
+        TileGrid maze = TileGrid.generate(width, height, rnd);
+        return new MazeDef(maze, startTile, exitTile, seed);
+    }
+
+    /**
+     * Merges the wall tiles of a maze into as few rectangles as a greedy scan
+     * can find. The four corner tiles and the exit tile are left out. The
+     * rectangles are in maze box body coordinates, where the tile at (x, y)
+     * is centered at (x, height - y - 1) and measures 1 x 1.
+     * 
+     * @param  mazeDef the maze definition
+     * @return a new list of wall rectangles
+     */
+    public static List<Rectangle> getWallRectangles(MazeDef mazeDef) {
+        return getWallRectangles(mazeDef, 0, 0, mazeDef.maze.getWidth(),
+                mazeDef.maze.getHeight());
+    }
+    
+    /**
+     * Merges the wall tiles of one chunk of a maze into rectangles. See
+     * {@link #getWallRectangles(MazeDef)}; the rectangles never cross the
+     * chunk's edges, so the chunks of a maze can be built independently.
+     * 
+     * @param  mazeDef the maze definition
+     * @param  chunkX the column of the chunk
+     * @param  chunkY the row of the chunk, counted from the top
+     * @return a new list of wall rectangles
+     * @throws IllegalArgumentException if the chunk is outside the maze
+     */
+    public static List<Rectangle> getChunkWallRectangles(MazeDef mazeDef,
+            int chunkX, int chunkY) {
+        
+        int left = chunkX * CHUNK_SIZE;
+        int top = chunkY * CHUNK_SIZE;
+        int width = mazeDef.maze.getWidth();
+        int height = mazeDef.maze.getHeight();
+        if (chunkX < 0 || chunkY < 0 || left >= width || top >= height) {
+            throw new IllegalArgumentException("Chunk outside the maze");
+        }
+        return getWallRectangles(mazeDef, left, top,
+                Math.min(CHUNK_SIZE, width - left),
+                Math.min(CHUNK_SIZE, height - top));
+    }
+    
+    /** Merges the wall tiles in the specified region of a maze. */
+    private static List<Rectangle> getWallRectangles(MazeDef mazeDef,
+            int left, int top, int width, int height) {
+        
+        int mazeHeight = mazeDef.maze.getHeight();
+        
+        boolean[] solid = new boolean[width * height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                solid[y * width + x] = isWallTile(mazeDef, left + x, top + y);
+            }
+        }
+        
+        List<Rectangle> ret = new ArrayList<Rectangle>();
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                if (!solid[y * width + x]) {
+                    continue;
+                }
+                
+                /* Grows the rectangle to the right, then downwards. */
+                int w = 1;
+                while (x + w < width && solid[y * width + x + w]) {
+                    ++w;
+                }
+                int h = 1;
+                while (y + h < height && isRowSolid(solid, width, x, y + h, w)) {
+                    ++h;
+                }
+                
+                for (int j = y; j < y + h; ++j) {
+                    for (int i = x; i < x + w; ++i) {
+                        solid[j * width + i] = false;
+                    }
+                }
+                
+                ret.add(new Rectangle(left + x - 0.5f,
+                        mazeHeight - top - y - h - 0.5f, w, h));
+            }
+        }
+        return ret;
+    }
+    
+    /**
+     * Returns true if the specified tile is a wall that is neither a corner
+     * nor the exit, i.e. one that is part of a wall rectangle.
+     */
+    private static boolean isWallTile(MazeDef mazeDef, int x, int y) {
+        int right = mazeDef.maze.getWidth() - 1;
+        int bottom = mazeDef.maze.getHeight() - 1;
+        if ((x == 0 || x == right) && (y == 0 || y == bottom)) {
+            return false;
+        }
+        if (x == mazeDef.exit.getX() && y == mazeDef.exit.getY()) {
+            return false;
+        }
+        return mazeDef.maze.isWall(x, y);
+    }
+    
+    /** Returns true if every tile in the specified row segment is solid. */
+    private static boolean isRowSolid(boolean[] solid, int width,
+            int x, int y, int length) {
+        
+        for (int i = x; i < x + length; ++i) {
+            if (!solid[y * width + i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /** Converts a wall-based maze position into a tile-based one. */
@@ -77,18 +230,208 @@ public final class MazeHelper {
         return new ImmutablePoint(2 * p.getX() + 1, 2 * p.getY() + 1);
     }
 
-    /** Contains a tile maze object and start/exit positions. */
+    /**
+     * Contains a tile maze object, start/exit positions and the seed the maze
+     * was generated from. Mazes read from saves made before seeds existed
+     * have no seed.
+     */
     public static class MazeDef implements Serializable {
         private static final long serialVersionUID = 7280561842114088170L;
         
-        public final TileMaze maze;
+        /** 
+         * A seeded maze is saved as its seed and size alone and regenerated
+         * on load. Unseeded mazes (from older saves) keep their tiles; the
+         * maze field was a maze library TileMaze in the oldest saves, so it
+         * is declared loosely and converted on read.
+         */
+        private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("maze", Object.class),
+            new ObjectStreamField("start", Point.class),
+            new ObjectStreamField("exit", Point.class),
+            new ObjectStreamField("seed", long.class),
+            new ObjectStreamField("seeded", boolean.class),
+            new ObjectStreamField("width", int.class),
+            new ObjectStreamField("height", int.class)
+        };
+        
+        public final TileGrid maze;
         public final Point start;
         public final Point exit;
+        public final long seed;
+        public final boolean seeded;
+        
+        /** Holds the fields read by readObject until readResolve. */
+        private transient Object[] read;
+        private transient List<Rectangle> wallRectangles;
 
-        public MazeDef(TileMaze maze, Point start, Point exit) {
+        public MazeDef(TileGrid maze, Point start, Point exit, long seed) {
+            this(maze, start, exit, seed, true);
+        }
+        
+        private MazeDef(TileGrid maze, Point start, Point exit, long seed,
+                boolean seeded) {
+            
             this.maze = maze;
             this.start = start;
             this.exit = exit;
+            this.seed = seed;
+            this.seeded = seeded;
+        }
+        
+        /**
+         * Returns the merged wall rectangles of this maze, computing them on
+         * first use. See {@link MazeHelper#getWallRectangles}.
+         */
+        public List<Rectangle> getWallRectangles() {
+            if (wallRectangles == null) {
+                wallRectangles = Collections.unmodifiableList(
+                        MazeHelper.getWallRectangles(this));
+            }
+            return wallRectangles;
+        }
+        
+        /** Returns the width of the maze in cells. */
+        public int getCellWidth() {
+            return (maze.getWidth() - 1) / 2;
+        }
+        
+        /** Returns the height of the maze in cells. */
+        public int getCellHeight() {
+            return (maze.getHeight() - 1) / 2;
+        }
+        
+        /**
+         * Returns true if this maze is too large to be built or drawn whole.
+         * Only the chunks (see {@link MazeHelper#CHUNK_SIZE}) near the marble
+         * get fixtures, and only the chunks on screen are drawn.
+         */
+        public boolean isStreamed() {
+            return maze.getWidth() > MAX_UNSTREAMED_SIZE
+                    || maze.getHeight() > MAX_UNSTREAMED_SIZE;
+        }
+        
+        /** Returns the number of chunk columns. */
+        public int getChunkColumns() {
+            return (maze.getWidth() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        }
+        
+        /** Returns the number of chunk rows. */
+        public int getChunkRows() {
+            return (maze.getHeight() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        }
+        
+        /**
+         * Returns true if a seeded maze of the specified size in cells may be
+         * generated from saved data. Anything larger than the largest
+         * {@link MazeSize} is taken for corruption rather than generated
+         * until memory runs out.
+         */
+        private static boolean isValidSeededSize(int width, int height) {
+            return width > 0 && height > 0 && width <= MAX_SEEDED_SIZE
+                    && height <= MAX_SEEDED_SIZE;
+        }
+        
+        /**
+         * Reads a maze definition written by {@link #write}.
+         * 
+         * @throws IOException if an I/O error occurs or the data is invalid
+         */
+        public static MazeDef read(DataInput in) throws IOException {
+            boolean seeded = in.readBoolean();
+            long seed = in.readLong();
+            if (seeded) {
+                int width = in.readInt();
+                int height = in.readInt();
+                if (!isValidSeededSize(width, height)) {
+                    throw new IOException("Invalid maze dimensions");
+                }
+                return getMaze(width, height, seed);
+            }
+            TileGrid maze = TileGrid.read(in);
+            Point start = new ImmutablePoint(in.readInt(), in.readInt());
+            Point exit = new ImmutablePoint(in.readInt(), in.readInt());
+            return new MazeDef(maze, start, exit, seed, false);
+        }
+        
+        /**
+         * Writes this maze definition in binary form: the seed and size if
+         * the maze is seeded, the tiles and start/exit positions otherwise.
+         * 
+         * @throws IOException if an I/O error occurs
+         */
+        public void write(DataOutput out) throws IOException {
+            out.writeBoolean(seeded);
+            out.writeLong(seed);
+            if (seeded) {
+                out.writeInt(getCellWidth());
+                out.writeInt(getCellHeight());
+            } else {
+                maze.write(out);
+                out.writeInt(start.getX());
+                out.writeInt(start.getY());
+                out.writeInt(exit.getX());
+                out.writeInt(exit.getY());
+            }
+        }
+        
+        /** Custom serialization routine. */
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            ObjectOutputStream.PutField fields = out.putFields();
+            fields.put("seed", seed);
+            fields.put("seeded", seeded);
+            if (seeded) {
+                fields.put("width", getCellWidth());
+                fields.put("height", getCellHeight());
+            } else {
+                fields.put("maze", maze);
+                fields.put("start", start);
+                fields.put("exit", exit);
+            }
+            out.writeFields();
+        }
+        
+        /** Custom deserialization routine; accepts the older forms. */
+        private void readObject(ObjectInputStream in)
+                throws ClassNotFoundException, IOException {
+            
+            ObjectInputStream.GetField fields = in.readFields();
+            Object maze = fields.get("maze", null);
+            if (maze instanceof TileMaze) {
+                maze = TileGrid.copyOf((TileMaze) maze);
+            }
+            read = new Object[] {
+                maze,
+                fields.get("start", null),
+                fields.get("exit", null),
+                fields.get("seed", 0L),
+                fields.get("seeded", false),
+                fields.get("width", 0),
+                fields.get("height", 0)
+            };
+        }
+        
+        /** Replaces the raw deserialized object with a complete one. */
+        private Object readResolve() throws ObjectStreamException {
+            try {
+                long seed = (Long) read[3];
+                boolean seeded = (Boolean) read[4];
+                int width = (Integer) read[5];
+                int height = (Integer) read[6];
+                if (seeded && width > 0 && height > 0) {
+                    if (!isValidSeededSize(width, height)) {
+                        throw new InvalidObjectException(
+                                "Invalid maze dimensions");
+                    }
+                    return getMaze(width, height, seed);
+                }
+                if (read[0] == null || read[1] == null || read[2] == null) {
+                    throw new InvalidObjectException("Incomplete maze");
+                }
+                return new MazeDef((TileGrid) read[0], (Point) read[1],
+                        (Point) read[2], seed, seeded);
+            } catch (ClassCastException e) {
+                throw new InvalidObjectException(e.getMessage());
+            }
         }
     }
 }
@@ -0,0 +1,82 @@
+package com.mygdx.hiddenmarble.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.utils.Disposable;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeDef;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeSize;
+
+/**
+ * Keeps a few mazes of one size ready to play. A worker thread generates them
+ * ahead of time, wall rectangles included, so taking one costs next to
+ * nothing. Only the Box2D fixtures are left to build, since the world may be
+ * touched from a single thread only. Streamed mazes get their wall rectangles
+ * chunk by chunk as they are played, so none are made ahead for them.
+ */
+public class MazePool implements Disposable {
+    private final MazeSize size;
+    private final BlockingQueue<MazeDef> ready;
+    private final Thread worker;
+    
+    /**
+     * Creates a pool and starts filling it.
+     * 
+     * @param  size the size of the mazes
+     * @param  capacity the number of mazes to keep ready
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public MazePool(MazeSize size, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Non-positive capacity");
+        }
+        this.size = size;
+        ready = new ArrayBlockingQueue<MazeDef>(capacity);
+        
+        final long seed = MathUtils.random.nextLong();
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                RandomXS128 seeds = new RandomXS128(seed);
+                try {
+                    while (true) {
+                        ready.put(create(seeds.nextLong()));
+                    }
+                } catch (InterruptedException e) {
+                    // Disposed.
+                }
+            }
+        }, "maze-pool");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+    
+    /**
+     * Takes a ready maze, or generates one on the spot if the worker has not
+     * caught up yet.
+     */
+    public MazeDef take() {
+        MazeDef ret = ready.poll();
+        if (ret == null) {
+            ret = create(MathUtils.random.nextLong());
+        }
+        return ret;
+    }
+    
+    /** Stops the worker. */
+    @Override
+    public void dispose() {
+        worker.interrupt();
+    }
+    
+    private MazeDef create(long seed) {
+        MazeDef ret = MazeHelper.getMaze(size.width, size.height, seed);
+        if (!ret.isStreamed()) {
+            ret.getWallRectangles(); // Precomputes the fixture layout.
+        }
+        return ret;
+    }
+}
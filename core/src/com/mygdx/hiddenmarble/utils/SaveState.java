@@ -1,19 +1,63 @@
 package com.mygdx.hiddenmarble.utils;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Preferences;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.StreamUtils;
 import com.mygdx.hiddenmarble.world.GameWorld;
+import com.mygdx.hiddenmarble.world.PhysicsBackend;
 
-/** Saves and loads game data. */
+/**
+ * Saves and loads game data. Data is kept in a compact, versioned binary
+ * file. Saves from older versions, which stored a Base64 string of Java
+ * serialized data in the preferences, are still read; the old entry is
+ * removed once the data has been saved in the new format.
+ * <p>
+ * The file is replaced atomically: data goes to a temporary file first,
+ * which is then renamed over the save file. Encoding and writing are
+ * separate steps so the write can happen on another thread.
+ */
 public class SaveState {
+    /** "HMSV" in ASCII. */
+    private static final int MAGIC = 0x484d5356;
+    private static final int VERSION = 1;
+    
+    /** The preferences key of the old save format. */
+    private static final String LEGACY_KEY = "dataString";
+    
+    private final FileHandle file;
+    private final FileHandle temp;
     private final Preferences preferences;
+    private final PhysicsBackend backend;
     private Data data;
+    private volatile boolean legacyLoaded;
 
     /** Creates a save state from the specified save file. */
     public SaveState(String filename) {
+        this(filename, PhysicsBackend.BOX2D);
+    }
+    
+    /**
+     * Creates a save state from the specified save file whose worlds are
+     * loaded onto the specified physics engine. Saves do not depend on the
+     * engine.
+     * 
+     * @throws NullPointerException if the engine is null
+     */
+    public SaveState(String filename, PhysicsBackend backend) {
+        if (backend == null) {
+            throw new NullPointerException();
+        }
+        this.backend = backend;
+        file = Gdx.files.local(filename + ".dat");
+        temp = Gdx.files.local(filename + ".tmp");
         preferences = Gdx.app.getPreferences(filename);
         data = new Data();
     }
@@ -24,26 +68,65 @@ public class SaveState {
      * @return true if the data was loaded
      */
     public boolean load() {
-        String dataString = preferences.getString("dataString", null);
-        if (dataString == null) {
-            return false;
+        if (file.exists()) {
+            return loadBinary(file);
         }
-        try {
-            data = (Data) Serialization.fromString(dataString);
-        } catch (Exception e) {
-            return false;
+        if (temp.exists()) {
+            return loadBinary(temp); // Interrupted while replacing the file.
         }
-        return true;
+        return loadLegacy();
     }
 
     /** Saves data to the save file. */
     public void save() {
+        write(encode(data.world, data.uiState));
+    }
+    
+    /**
+     * Replaces the save file with data from {@link #encode}. May be called
+     * from any thread, but not from two at once.
+     * 
+     * @throws RuntimeException if the file could not be written
+     */
+    public void write(byte[] bytes) {
+        temp.writeBytes(bytes, false);
+        if (!temp.file().renameTo(file.file())) {
+            /* Some platforms won't rename over an existing file. */
+            file.delete();
+            if (!temp.file().renameTo(file.file())) {
+                throw new RuntimeException("Could not replace " + file);
+            }
+        }
+        
+        if (legacyLoaded) {
+            legacyLoaded = false;
+            preferences.remove(LEGACY_KEY);
+            preferences.flush();
+        }
+    }
+    
+    /**
+     * Encodes a world and a UI state in the save file format. The result does
+     * not share any state with the world.
+     * 
+     * @param world the world, or null
+     * @param uiState the UI state, or null
+     */
+    public static byte[] encode(GameWorld world, String uiState) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
         try {
-            preferences.putString("dataString", Serialization.toString(data));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(uiState == null ? "" : uiState);
+            out.writeBoolean(world != null);
+            if (world != null) {
+                world.writeState(out);
+            }
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new RuntimeException(e); // Not thrown by byte arrays.
         }
-        preferences.flush();
+        return bytes.toByteArray();
     }
 
     /** Clears all loaded data. */
@@ -53,8 +136,11 @@ public class SaveState {
     
     /** Erases the save file. */
     public void erase() {
+        file.delete();
+        temp.delete();
         preferences.clear();
         preferences.flush();
+        legacyLoaded = false;
     }
     
     public GameWorld getWorld() {
@@ -73,6 +159,45 @@ public class SaveState {
         data.uiState = state;
     }
     
+    private boolean loadBinary(FileHandle source) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(source.read()));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            Data loaded = new Data();
+            loaded.uiState = in.readUTF();
+            if (in.readBoolean()) {
+                loaded.world = GameWorld.readState(in, backend);
+            }
+            data = loaded;
+        } catch (Exception e) {
+            return false;
+        } finally {
+            StreamUtils.closeQuietly(in);
+        }
+        return true;
+    }
+    
+    private boolean loadLegacy() {
+        String dataString = preferences.getString(LEGACY_KEY, null);
+        if (dataString == null) {
+            return false;
+        }
+        try {
+            data = (Data) Serialization.fromString(dataString);
+        } catch (Exception e) {
+            return false;
+        }
+        if (data.world != null) {
+            data.world.setPhysicsBackend(backend);
+        }
+        legacyLoaded = true;
+        return true;
+    }
+    
+    /** Also the layout of the old Java serialized format; do not change. */
     private static class Data implements Serializable {
         private static final long serialVersionUID = -1210225610405870019L;
         
@@ -0,0 +1,176 @@
+package com.mygdx.hiddenmarble.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Random;
+
+import maze.TileMaze;
+
+/**
+ * A maze in tile representation: a (2w + 1) x (2h + 1) grid of wall and floor
+ * tiles for a maze of w x h cells. Unlike the maze library's generators, the
+ * one here draws every random number from a caller-supplied generator, so a
+ * seed is enough to reproduce a maze. Saves and session recordings store
+ * only the seed, so changing how {@link #generate} consumes random numbers
+ * changes the mazes they load.
+ */
+public final class TileGrid implements Serializable {
+    private static final long serialVersionUID = -3409166243880455236L;
+    
+    /** Upper bound on grid dimensions accepted by {@link #read}. */
+    private static final int MAX_SIZE = 4096;
+    
+    private static final int[] DX = { 0, 1, 0, -1 };
+    private static final int[] DY = { -1, 0, 1, 0 };
+    
+    private final int width;
+    private final int height;
+    private final boolean[] walls;
+    
+    private TileGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        walls = new boolean[width * height];
+    }
+    
+    /**
+     * Generates a perfect maze with the recursive backtracker algorithm (run
+     * with an explicit stack).
+     * 
+     * @param  width the width of the maze in cells
+     * @param  height the height of the maze in cells
+     * @param  rnd the source of randomness
+     * @return a new tile grid of (2 * width + 1) x (2 * height + 1) tiles
+     * @throws IllegalArgumentException if either dimension is not positive
+     */
+    public static TileGrid generate(int width, int height, Random rnd) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Non-positive maze dimensions");
+        }
+        TileGrid grid = new TileGrid(2 * width + 1, 2 * height + 1);
+        for (int i = 0; i < grid.walls.length; ++i) {
+            grid.walls[i] = true;
+        }
+        
+        boolean[] visited = new boolean[width * height];
+        int[] stack = new int[width * height];
+        int[] moves = new int[DX.length];
+        int top = 0;
+        
+        int first = rnd.nextInt(width * height);
+        stack[top++] = first;
+        visited[first] = true;
+        grid.carve(first % width, first / width, 0, 0);
+        
+        while (top > 0) {
+            int cell = stack[top - 1];
+            int x = cell % width;
+            int y = cell / width;
+            
+            int moveCount = 0;
+            for (int d = 0; d < DX.length; ++d) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx >= 0 && nx < width && ny >= 0 && ny < height
+                        && !visited[ny * width + nx]) {
+                    moves[moveCount++] = d;
+                }
+            }
+            
+            if (moveCount == 0) {
+                --top;
+                continue;
+            }
+            
+            int d = moves[rnd.nextInt(moveCount)];
+            int next = (y + DY[d]) * width + x + DX[d];
+            visited[next] = true;
+            grid.carve(x, y, DX[d], DY[d]);
+            grid.carve(x + DX[d], y + DY[d], 0, 0);
+            stack[top++] = next;
+        }
+        return grid;
+    }
+    
+    /** Copies the tiles of a maze library tile maze. */
+    public static TileGrid copyOf(TileMaze maze) {
+        TileGrid grid = new TileGrid(maze.getWidth(), maze.getHeight());
+        for (int y = 0; y < grid.height; ++y) {
+            for (int x = 0; x < grid.width; ++x) {
+                grid.walls[y * grid.width + x] = maze.isWall(x, y);
+            }
+        }
+        return grid;
+    }
+    
+    /**
+     * Reads a grid written by {@link #write}.
+     * 
+     * @throws IOException if an I/O error occurs or the dimensions are invalid
+     */
+    public static TileGrid read(DataInput in) throws IOException {
+        int width = in.readInt();
+        int height = in.readInt();
+        if (width <= 0 || height <= 0 || width > MAX_SIZE || height > MAX_SIZE) {
+            throw new IOException("Invalid grid dimensions");
+        }
+        TileGrid grid = new TileGrid(width, height);
+        byte[] bits = new byte[(grid.walls.length + 7) / 8];
+        in.readFully(bits);
+        for (int i = 0; i < grid.walls.length; ++i) {
+            grid.walls[i] = (bits[i >> 3] & (1 << (i & 7))) != 0;
+        }
+        return grid;
+    }
+    
+    /**
+     * Writes the dimensions and the tiles, one bit per tile.
+     * 
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(height);
+        byte[] bits = new byte[(walls.length + 7) / 8];
+        for (int i = 0; i < walls.length; ++i) {
+            if (walls[i]) {
+                bits[i >> 3] |= 1 << (i & 7);
+            }
+        }
+        out.write(bits);
+    }
+    
+    /** Returns the width in tiles. */
+    public int getWidth() {
+        return width;
+    }
+    
+    /** Returns the height in tiles. */
+    public int getHeight() {
+        return height;
+    }
+    
+    /**
+     * Returns true if the specified tile is a wall.
+     * 
+     * @throws IndexOutOfBoundsException if the tile is outside the grid
+     */
+    public boolean isWall(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ")");
+        }
+        return walls[y * width + x];
+    }
+    
+    /**
+     * Clears the tile of cell (x, y), or the wall between it and the cell at
+     * offset (dx, dy) if the offset is nonzero.
+     */
+    private void carve(int x, int y, int dx, int dy) {
+        int tx = 2 * x + 1 + dx;
+        int ty = 2 * y + 1 + dy;
+        walls[ty * width + tx] = false;
+    }
+}
@@ -0,0 +1,205 @@
+package com.mygdx.hiddenmarble.world;
+
+import java.util.List;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Contact;
+import com.badlogic.gdx.physics.box2d.ContactImpulse;
+import com.badlogic.gdx.physics.box2d.ContactListener;
+import com.badlogic.gdx.physics.box2d.Manifold;
+import com.badlogic.gdx.physics.box2d.Transform;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.mygdx.hiddenmarble.entities.DefaultBorders;
+import com.mygdx.hiddenmarble.entities.DefaultMarble;
+import com.mygdx.hiddenmarble.entities.DefaultMazeBox;
+import com.mygdx.hiddenmarble.entities.FixtureData;
+import com.mygdx.hiddenmarble.entities.Marble;
+import com.mygdx.hiddenmarble.entities.Material;
+import com.mygdx.hiddenmarble.entities.MazeBox;
+import com.mygdx.hiddenmarble.entities.MazeFixtureDef;
+import com.mygdx.hiddenmarble.entities.StreamedMazeBox;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeDef;
+
+import maze.Point;
+
+/**
+ * The game's physics on Box2D. The maze box has a sensor for the inside. The
+ * walls of a streamed maze are built chunk by chunk as the marble nears them.
+ */
+class Box2DPhysics implements Physics {
+    /** Box2D velocity constraint solver iterations. */
+    private static final int POSITION_ITERATIONS = 2;
+    /** Box2D position constraint solver iterations. */
+    private static final int VELOCITY_ITERATIONS = 6;
+
+    private final EventQueue events;
+    private final World world;
+    private final Marble marble;
+    private final Array<Body> bodies;
+    private MazeBox mazeBox;
+    private StreamedMazeBox streamedBox;
+    private boolean inMaze;
+
+    static {
+        /* Stops the marble from shaking when resting against a wall. */
+        World.setVelocityThreshold(GameWorld.VELOCITY_THRESHOLD);
+    }
+
+    /**
+     * Creates the Box2D world with the borders, the maze box and the marble.
+     *
+     * @param width the width of the borders in Box2D meters
+     * @param height the height of the borders in Box2D meters
+     * @param mazeDef the maze definition
+     * @param marblePos the marble's position, or null for the start tile
+     * @param radius the marble radius in Box2D meters
+     * @param events where hits are recorded
+     */
+    Box2DPhysics(float width, float height, MazeDef mazeDef,
+            Vector2 marblePos, float radius, EventQueue events) {
+
+        this.events = events;
+        world = new World(new Vector2(), true);
+        world.setContactListener(new Box2DContactListener());
+        new DefaultBorders(world, width, height);
+        createMazeBox(mazeDef);
+        if (marblePos == null) {
+            marblePos = mazeBox.getTileLocation(mazeDef.start);
+        }
+        marble = new DefaultMarble(world, marblePos, radius);
+        bodies = new Array<Body>();
+    }
+
+    @Override
+    public void step(float timeStep, Vector2 gravity) {
+        if (streamedBox != null) {
+            streamedBox.update(marble.getPosition());
+        }
+        world.setGravity(gravity);
+        world.step(timeStep, VELOCITY_ITERATIONS, POSITION_ITERATIONS);
+    }
+
+    @Override
+    public void setMaze(MazeDef mazeDef) {
+        /* Ends the sensor contact, if any. */
+        mazeBox.destroy();
+        createMazeBox(mazeDef);
+    }
+
+    @Override
+    public void resetMarble(Vector2 position) {
+        marble.reset(position);
+    }
+
+    @Override
+    public Vector2 getMarblePosition() {
+        return marble.getPosition();
+    }
+
+    @Override
+    public Vector2 getMarbleVelocity() {
+        return marble.getLinearVelocity();
+    }
+
+    @Override
+    public void setMarbleVelocity(float x, float y) {
+        marble.setLinearVelocity(x, y);
+    }
+
+    @Override
+    public boolean isMarbleInMaze() {
+        return inMaze;
+    }
+
+    @Override
+    public Vector2 getTileLocation(Point tile, Vector2 out) {
+        return mazeBox.getTileLocation(tile, out);
+    }
+
+    @Override
+    public Transform getMazeTransform() {
+        return mazeBox.getTransform();
+    }
+
+    @Override
+    public List<MazeFixtureDef> getMazeFixtureDefs() {
+        return mazeBox.getMazeFixtureDefs();
+    }
+
+    @Override
+    public void getStats(WorldStats out) {
+        out.bodyCount = world.getBodyCount();
+        out.contactCount = world.getContactCount();
+        world.getBodies(bodies);
+        int fixtureCount = 0;
+        for (int i = 0; i < bodies.size; ++i) {
+            fixtureCount += bodies.get(i).getFixtureList().size;
+        }
+        bodies.clear();
+        out.fixtureCount = fixtureCount;
+    }
+
+    @Override
+    public void dispose() {
+        world.dispose();
+    }
+
+    private void createMazeBox(MazeDef mazeDef) {
+        if (mazeDef.isStreamed()) {
+            streamedBox = new StreamedMazeBox(world, mazeDef);
+            mazeBox = streamedBox;
+        } else {
+            streamedBox = null;
+            mazeBox = new DefaultMazeBox(world, mazeDef);
+        }
+    }
+
+    /** Returns true if the specified contact involves a sensor. */
+    private static boolean checkSensor(Contact contact) {
+        FixtureData a = (FixtureData) contact.getFixtureA().getUserData();
+        FixtureData b = (FixtureData) contact.getFixtureB().getUserData();
+        return a.isSensor || b.isSensor;
+    }
+
+    private class Box2DContactListener implements ContactListener {
+        @Override
+        public void beginContact(Contact contact) {
+            if (checkSensor(contact)) {
+                inMaze = true;
+            }
+        }
+
+        @Override
+        public void endContact(Contact contact) {
+            if (checkSensor(contact)) {
+                inMaze = false;
+            }
+        }
+
+        @Override
+        public void preSolve(Contact contact, Manifold oldManifold) {
+        }
+
+        @Override
+        public void postSolve(Contact contact, ContactImpulse contactImpulse) {
+            float impulse = contactImpulse.getNormalImpulses()[0];
+            if (impulse > GameWorld.IMPULSE_THRESHOLD) {
+                /*
+                 * The marble is the only moving object so one of these
+                 * fixtures must belong to the marble. BodyHelper tags every
+                 * fixture it creates with its FixtureData.
+                 */
+                FixtureData a = (FixtureData) contact.getFixtureA().getUserData();
+                FixtureData other = a.isMarble
+                        ? (FixtureData) contact.getFixtureB().getUserData()
+                        : a;
+                Material material = other.material;
+
+                /* Marble-hitting-wall event. */
+                events.add(EventQueue.HIT, impulse, material);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.mygdx.hiddenmarble.world;
+
+import java.util.List;
+
+import com.mygdx.hiddenmarble.entities.Material;
+
+/**
+ * A ring buffer of world events. Events are recorded as primitives while the
+ * physics engine steps (including from inside Box2D callbacks) and handed to
+ * the listeners in one batch afterwards. Nothing is allocated after
+ * construction. Roll and stop events describe a state rather than something
+ * that happened, so only the last of them is delivered per batch.
+ */
+class EventQueue {
+    static final int HIT = 0;
+    static final int ROLL = 1;
+    static final int STOP = 2;
+    static final int SOLVED = 3;
+    
+    private static final Material[] MATERIALS = Material.values();
+    
+    private final int[] types;
+    private final float[] values;
+    private final int[] materials;
+    private final int mask;
+    private int head;
+    private int size;
+    
+    /**
+     * Creates a queue.
+     * 
+     * @param  capacity the maximum number of pending events (a power of two)
+     * @throws IllegalArgumentException if the capacity is not a power of two
+     */
+    EventQueue(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of 2");
+        }
+        types = new int[capacity];
+        values = new float[capacity];
+        materials = new int[capacity];
+        mask = capacity - 1;
+    }
+    
+    /**
+     * Appends an event. If the queue is full the event is dropped; a lost
+     * hit sound is preferable to growing the buffer mid-game.
+     * 
+     * @param type the event type
+     * @param value the impulse (hit) or velocity length<sup>2</sup> (roll)
+     * @param material the material involved, or null
+     */
+    void add(int type, float value, Material material) {
+        if (size == types.length) {
+            return;
+        }
+        int i = (head + size) & mask;
+        types[i] = type;
+        values[i] = value;
+        materials[i] = material == null ? -1 : material.ordinal();
+        ++size;
+    }
+    
+    /** Returns true if no events are pending. */
+    boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /** Discards all pending events. */
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+    
+    /** Delivers all pending events in order and empties the queue. */
+    void drain(List<GameWorldListener> listeners) {
+        /* Finds the last roll/stop event; earlier ones are redundant. */
+        int lastMotion = -1;
+        for (int n = 0; n < size; ++n) {
+            int type = types[(head + n) & mask];
+            if (type == ROLL || type == STOP) {
+                lastMotion = n;
+            }
+        }
+        
+        int listenerCount = listeners.size();
+        for (int n = 0; n < size; ++n) {
+            int i = (head + n) & mask;
+            int type = types[i];
+            if ((type == ROLL || type == STOP) && n != lastMotion) {
+                continue;
+            }
+            float value = values[i];
+            Material material = materials[i] < 0 ? null : MATERIALS[materials[i]];
+            for (int j = 0; j < listenerCount; ++j) {
+                GameWorldListener listener = listeners.get(j);
+                switch (type) {
+                case HIT:
+                    listener.marbleHit(value, material);
+                    break;
+                case ROLL:
+                    listener.marbleRoll(value, material);
+                    break;
+                case STOP:
+                    listener.marbleStop();
+                    break;
+                case SOLVED:
+                    listener.mazeSolved();
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+        clear();
+    }
+}
@@ -1,5 +1,7 @@
 package com.mygdx.hiddenmarble.world;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -8,26 +10,18 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.physics.box2d.Contact;
-import com.badlogic.gdx.physics.box2d.ContactImpulse;
-import com.badlogic.gdx.physics.box2d.ContactListener;
-import com.badlogic.gdx.physics.box2d.Fixture;
-import com.badlogic.gdx.physics.box2d.Manifold;
 import com.badlogic.gdx.physics.box2d.Transform;
-import com.badlogic.gdx.physics.box2d.World;
 import com.badlogic.gdx.utils.Disposable;
-import com.mygdx.hiddenmarble.entities.DefaultBorders;
-import com.mygdx.hiddenmarble.entities.DefaultMarble;
-import com.mygdx.hiddenmarble.entities.DefaultMazeBox;
-import com.mygdx.hiddenmarble.entities.Entity;
-import com.mygdx.hiddenmarble.entities.Marble;
 import com.mygdx.hiddenmarble.entities.Material;
-import com.mygdx.hiddenmarble.entities.MazeBox;
 import com.mygdx.hiddenmarble.entities.MazeFixtureDef;
 import com.mygdx.hiddenmarble.utils.MazeHelper;
 import com.mygdx.hiddenmarble.utils.MazeHelper.MazeDef;
 
-/** The game model. */
+/**
+ * The game model. The physics runs on one of the {@link PhysicsBackend}s;
+ * everything else, from the fixed time step to the events, is the same on
+ * all of them.
+ */
 public class GameWorld implements Disposable, Serializable {
     private static final long serialVersionUID = 6734275040761749306L;
 
@@ -35,20 +29,29 @@ public class GameWorld implements Disposable, Serializable {
     private static final float MARBLE_RADIUS = 0.42f;
     
     /** Box2D velocity threshold for elastic collisions. */
-    private static final float VELOCITY_THRESHOLD = 8.0f;
+    static final float VELOCITY_THRESHOLD = 8.0f;
     /** Velocity vector length<sup>2</sup> threshold for the marble roll event. */
     private static final float LEN2_THRESHOLD = 0.0f;
     /** Collision impulse threshold for the marble hit event. */
-    private static final float IMPULSE_THRESHOLD = 4.2f;
+    static final float IMPULSE_THRESHOLD = 4.2f;
     
-    /** Box2D time step in seconds. */
-    private static final float TIME_STEP = 1.0f / 45.0f;
+    /** Velocity vector length<sup>2</sup> below which the marble is at rest. */
+    private static final float IDLE_LEN2_THRESHOLD = 0.001f;
+    /** Gravity change (distance<sup>2</sup>) that wakes the world up. */
+    private static final float IDLE_GRAVITY_EPSILON2 = 0.25f;
+    /** How long the marble must stay at rest before stepping stops. */
+    private static final float IDLE_DELAY = 0.5f;
+    
+    /** Space around a streamed maze in Box2D meters, for leaving it. */
+    private static final float STREAMED_MARGIN = 2.0f;
+    
+    /** Maximum number of world events buffered between deliveries. */
+    private static final int EVENT_CAPACITY = 64;
+    
+    /** Default Box2D time step in seconds. */
+    public static final float TIME_STEP = 1.0f / 45.0f;
     /** Maximum Box2D time steps between frames. */
     private static final int MAX_STEPS_PER_FRAME = 5;
-    /** Box2D velocity constraint solver iterations. */
-    private static final int POSITION_ITERATIONS = 2;
-    /** Box2D position constraint solver iterations. */
-    private static final int VELOCITY_ITERATIONS = 6;
 
     private Vector2 marblePos;
     private MazeDef mazeDef;
@@ -58,17 +61,19 @@ public class GameWorld implements Disposable, Serializable {
     private boolean rolling;
     private boolean solved;
     
-    private transient ContactListener contactListener;
+    private transient PhysicsBackend backend;
+    private transient Physics physics;
     private transient List<GameWorldListener> eventListeners;
-    private transient World world;
-    private transient Marble marble;
-    private transient MazeBox mazeBox;
+    private transient EventQueue events;
     private transient float accumulator;
-
-    static {
-        /* Stops the marble from shaking when resting against a wall. */
-        World.setVelocityThreshold(VELOCITY_THRESHOLD);
-    }
+    private transient float timeStep;
+    private transient Vector2 prevMarblePos;
+    private transient Vector2 renderMarblePos;
+    private transient long stepCount;
+    private transient long clampCount;
+    private transient SessionRecording recording;
+    private transient Vector2 restGravity;
+    private transient float restTime;
     
     /**
      * Constructs a world with the specified dimensions.
@@ -77,18 +82,163 @@ public class GameWorld implements Disposable, Serializable {
      * @param height the height of the world in Box2D meters
      */
     public GameWorld(float width, float height) {
+        this(width, height, MazeHelper.getMediumMaze());
+    }
+    
+    /**
+     * Constructs a world with the specified dimensions around the specified
+     * maze. Nothing here touches the graphics or audio backends so the world
+     * can be simulated headlessly.
+     * 
+     * @param  width the width of the world in Box2D meters
+     * @param  height the height of the world in Box2D meters
+     * @param  mazeDef the maze definition
+     * @throws NullPointerException if the maze definition is null
+     */
+    public GameWorld(float width, float height, MazeDef mazeDef) {
+        this(width, height, mazeDef, PhysicsBackend.BOX2D);
+    }
+    
+    /**
+     * Constructs a world with the specified dimensions around the specified
+     * maze, simulated by the specified physics engine. A world around a
+     * streamed maze grows to hold the maze, since it is larger than any
+     * screen.
+     * 
+     * @param  width the width of the world in Box2D meters
+     * @param  height the height of the world in Box2D meters
+     * @param  mazeDef the maze definition
+     * @param  backend the physics engine
+     * @throws NullPointerException if the maze definition or the engine is
+     *         null
+     */
+    public GameWorld(float width, float height, MazeDef mazeDef,
+            PhysicsBackend backend) {
+        
+        if (mazeDef == null || backend == null) {
+            throw new NullPointerException();
+        }
+        this.mazeDef = mazeDef;
+        this.backend = backend;
         init(width, height);
     }
     
+    /** Constructs a world with the marble at the specified position. */
+    private GameWorld(float width, float height, MazeDef mazeDef,
+            Vector2 marblePos, PhysicsBackend backend) {
+        
+        this.mazeDef = mazeDef;
+        this.marblePos = marblePos;
+        this.backend = backend;
+        init(width, height);
+    }
+    
+    /**
+     * Reads a world written by {@link #writeState} onto Box2D.
+     * 
+     * @throws IOException if an I/O error occurs or the data is invalid
+     */
+    public static GameWorld readState(DataInput in) throws IOException {
+        return readState(in, PhysicsBackend.BOX2D);
+    }
+    
+    /**
+     * Reads a world written by {@link #writeState} onto the specified physics
+     * engine. The state does not depend on the engine it was written from.
+     * 
+     * @throws IOException if an I/O error occurs or the data is invalid
+     * @throws NullPointerException if the engine is null
+     */
+    public static GameWorld readState(DataInput in, PhysicsBackend backend)
+            throws IOException {
+        
+        if (backend == null) {
+            throw new NullPointerException();
+        }
+        float width = in.readFloat();
+        float height = in.readFloat();
+        Vector2 position = new Vector2(in.readFloat(), in.readFloat());
+        float velocityX = in.readFloat();
+        float velocityY = in.readFloat();
+        boolean inMaze = in.readBoolean();
+        boolean solved = in.readBoolean();
+        MazeDef mazeDef = MazeDef.read(in);
+        
+        GameWorld ret = new GameWorld(width, height, mazeDef, position,
+                backend);
+        ret.physics.setMarbleVelocity(velocityX, velocityY);
+        ret.inMaze = inMaze;
+        ret.solved = solved;
+        return ret;
+    }
+    
     /**
-     * Updates the world dimensions.
+     * Writes the world's state in compact binary form: dimensions, marble
+     * position and velocity, flags and the maze (see {@link MazeDef#write}).
+     * 
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeState(DataOutput out) throws IOException {
+        Vector2 position = physics.getMarblePosition();
+        Vector2 velocity = physics.getMarbleVelocity();
+        out.writeFloat(width);
+        out.writeFloat(height);
+        out.writeFloat(position.x);
+        out.writeFloat(position.y);
+        out.writeFloat(velocity.x);
+        out.writeFloat(velocity.y);
+        out.writeBoolean(inMaze);
+        out.writeBoolean(solved);
+        mazeDef.write(out);
+    }
+    
+    /**
+     * Updates the world dimensions. Like the constructors, this will not
+     * make the world too small for a streamed maze.
      * 
      * @param width the width of the world in Box2D meters
      * @param height the height of the world in Box2D meters
      */
     public void resize(float width, float height) {
-        this.width = width;
-        this.height = height;
+        setSize(width, height);
+    }
+    
+    /**
+     * Starts over with a new maze. The physics engine, the borders, the
+     * marble and the registered listeners are kept; only the maze box is
+     * rebuilt.
+     * 
+     * @param  mazeDef the maze definition
+     * @throws NullPointerException if the maze definition is null
+     * @throws IllegalArgumentException if the maze is streamed and does not
+     *         fit within the borders
+     */
+    public void reset(MazeDef mazeDef) {
+        if (mazeDef == null) {
+            throw new NullPointerException();
+        }
+        if (mazeDef.isStreamed()
+                && (mazeDef.maze.getWidth() + 2.0f * STREAMED_MARGIN > width
+                || mazeDef.maze.getHeight() + 2.0f * STREAMED_MARGIN > height)) {
+            throw new IllegalArgumentException("Maze does not fit the world");
+        }
+        
+        this.mazeDef = mazeDef;
+        physics.setMaze(mazeDef);
+        marblePos = physics.getTileLocation(mazeDef.start, new Vector2());
+        physics.resetMarble(marblePos);
+        prevMarblePos.set(marblePos);
+        
+        inMaze = false;
+        solved = false;
+        accumulator = 0.0f;
+        restTime = 0.0f;
+        events.clear();
+        if (rolling) {
+            events.add(EventQueue.STOP, 0.0f, null);
+            rolling = false;
+        }
+        events.drain(eventListeners);
     }
     
     /**
@@ -115,22 +265,103 @@ public class GameWorld implements Disposable, Serializable {
      * @param gravity the world's gravity
      */
     public void update(float delta, Vector2 gravity) {
-        float len2 = marble.getLinearVelocity().len2();
-        if (len2 > LEN2_THRESHOLD) {
-            Material material = inMaze ? Material.WOOD : Material.GLASS;
-            for (GameWorldListener listener : eventListeners) {
-                listener.marbleRoll(len2, material);
+        float len2 = physics.getMarbleVelocity().len2();
+        
+        if (checkIdle(delta, gravity, len2)) {
+            if (rolling) {
+                events.add(EventQueue.STOP, 0.0f, null);
+                rolling = false;
             }
-            rolling = true;
-        } else if (rolling) {
-            for (GameWorldListener listener : eventListeners) {
-                listener.marbleStop();
+        } else {
+            if (len2 > LEN2_THRESHOLD) {
+                Material material = inMaze ? Material.WOOD : Material.GLASS;
+                events.add(EventQueue.ROLL, len2, material);
+                rolling = true;
+            } else if (rolling) {
+                events.add(EventQueue.STOP, 0.0f, null);
+                rolling = false;
             }
-            rolling = false;
+            
+            step(delta, gravity);
         }
         
-        world.setGravity(gravity);
-        step(delta);
+        /* Events recorded during the step go out in one batch. */
+        events.drain(eventListeners);
+    }
+    
+    /**
+     * Advances the world by exactly one physics step, bypassing the
+     * accumulator and idle detection. Used to replay recorded sessions.
+     * 
+     * @param gravity the world's gravity for the step
+     */
+    public void stepOnce(Vector2 gravity) {
+        singleStep(gravity);
+        accumulator = 0.0f;
+        events.drain(eventListeners);
+    }
+    
+    /**
+     * Starts or stops recording. While a recording is set, the gravity of
+     * every physics step is appended to it. For the recording to replay
+     * exactly, set it on a freshly constructed world before the first step.
+     * 
+     * @param recording the recording, or null to stop recording
+     */
+    public void setRecording(SessionRecording recording) {
+        this.recording = recording;
+    }
+    
+    /**
+     * Moves the world onto another physics engine. The marble keeps its
+     * position and velocity but not its spin, and the old engine is
+     * disposed of.
+     * 
+     * @throws NullPointerException if the engine is null
+     */
+    public void setPhysicsBackend(PhysicsBackend backend) {
+        if (backend == null) {
+            throw new NullPointerException();
+        }
+        if (backend == this.backend) {
+            return;
+        }
+        Vector2 velocity = new Vector2(physics.getMarbleVelocity());
+        marblePos.set(physics.getMarblePosition());
+        physics.dispose();
+        this.backend = backend;
+        physics = createPhysics();
+        physics.setMarbleVelocity(velocity.x, velocity.y);
+    }
+    
+    /** Returns the physics engine the world runs on. */
+    public PhysicsBackend getPhysicsBackend() {
+        return backend;
+    }
+    
+    /** Returns the definition of the current maze. */
+    public MazeDef getMazeDef() {
+        return mazeDef;
+    }
+    
+    /**
+     * Sets the physics rate. Rendering stays smooth at lower rates since the
+     * marble's drawn position is interpolated between steps.
+     * 
+     * @param  timeStep the Box2D time step in seconds
+     * @throws IllegalArgumentException if the time step is not positive
+     */
+    public void setTimeStep(float timeStep) {
+        if (!(timeStep > 0.0f)) {
+            throw new IllegalArgumentException("Non-positive time step");
+        }
+        this.timeStep = timeStep;
+        accumulator = 0.0f;
+    }
+    
+    /** Returns the Box2D time step in seconds. */
+    public float getTimeStep() {
+        return timeStep;
     }
     
     /** Returns the width of the world in Box2D meters. */
@@ -143,6 +374,35 @@ public class GameWorld implements Disposable, Serializable {
         return height;
     }
     
+    /** Returns true once the marble has left the maze for the first time. */
+    public boolean isSolved() {
+        return solved;
+    }
+    
+    /** Returns the number of physics steps taken since the world was created. */
+    public long getStepCount() {
+        return stepCount;
+    }
+    
+    /**
+     * Writes the step counters and the physics engine's object counts into
+     * the specified stats. Must be called from the thread that steps the
+     * world.
+     */
+    public void getStats(WorldStats out) {
+        out.stepCount = stepCount;
+        out.clampCount = clampCount;
+        physics.getStats(out);
+    }
+    
+    /**
+     * Returns true if stepping is suspended because the marble has been at
+     * rest under unchanged gravity for a while.
+     */
+    public boolean isIdle() {
+        return restTime >= IDLE_DELAY;
+    }
+    
     /** Returns true if the marble is in the maze. */
     public boolean isMarbleInMaze() {
         return inMaze;
@@ -150,58 +410,87 @@ public class GameWorld implements Disposable, Serializable {
     
     /** Returns the marble's start position in world coordinates. */
     public Vector2 getMarbleStart() {
-        return mazeBox.getTileLocation(mazeDef.start);
+        return physics.getTileLocation(mazeDef.start, new Vector2());
     }
     
     /** Returns the maze's exit position in world coordinates. */
     public Vector2 getMazeExit() {
-        return mazeBox.getTileLocation(mazeDef.exit);
+        return physics.getTileLocation(mazeDef.exit, new Vector2());
     }
     
     /** Returns the marble's current position in world coordinates. */
     public Vector2 getMarblePosition() {
-        return marble.getPosition();
+        return physics.getMarblePosition();
+    }
+    
+    /**
+     * Returns the marble's position for drawing, interpolated between the
+     * last two physics steps by the fraction of a step left in the
+     * accumulator. The returned vector is reused by later calls.
+     */
+    public Vector2 getMarbleRenderPosition() {
+        float alpha = accumulator / timeStep;
+        return renderMarblePos.set(prevMarblePos).lerp(physics.getMarblePosition(),
+                alpha);
     }
     
     /** Returns the width of the marble in Box2D meters. */
     public float getMarbleWidth() {
-        return marble.getWidth();
+        return 2.0f * MARBLE_RADIUS;
     }
     
     /** Returns the width of the maze box in Box2D meters. */
     public float getMazeBoxWidth() {
-        return mazeBox.getWidth();
+        return mazeDef.maze.getWidth();
     }
     
     /** Returns the height of the maze box in Box2D meters. */
     public float getMazeBoxHeight() {
-        return mazeBox.getHeight();
+        return mazeDef.maze.getHeight();
     }
     
     /** Returns the body transform of the maze box. */
     public Transform getMazeTransform() {
-        return mazeBox.getTransform();
+        return physics.getMazeTransform();
     }
     
     /** Returns an unmodifiable list of maze box fixture definitions. */
     public List<MazeFixtureDef> getMazeFixtureDefs() {
-        return mazeBox.getMazeFixtureDefs();
+        return physics.getMazeFixtureDefs();
     }
     
     @Override
     public void dispose() {
-        world.dispose();
+        physics.dispose();
     }
     
-    /** Returns true if the specified contact involves a sensor. */
-    private boolean checkSensor(Contact contact) {
-        Fixture a = contact.getFixtureA();
-        Fixture b = contact.getFixtureB();
-        return a.isSensor() || b.isSensor();
+    /**
+     * Tracks how long the marble has been at rest under the same gravity.
+     * Gravity is compared against its value when the rest began, so slow
+     * drift adds up and eventually wakes the world.
+     * 
+     * @return true if this frame's step should be skipped
+     */
+    private boolean checkIdle(float delta, Vector2 gravity, float len2) {
+        if (len2 > IDLE_LEN2_THRESHOLD
+                || gravity.dst2(restGravity) > IDLE_GRAVITY_EPSILON2) {
+            restGravity.set(gravity);
+            restTime = 0.0f;
+            return false;
+        }
+        if (restTime < IDLE_DELAY) {
+            restTime += delta;
+            return false;
+        }
+        
+        /* Holds the marble still for rendering until something changes. */
+        accumulator = 0.0f;
+        prevMarblePos.set(physics.getMarblePosition());
+        return true;
     }
     
-    /** Updates the physics engine. */
-    private void step(float delta) {
+    /** Takes the steps the accumulated time calls for. */
+    private void step(float delta, Vector2 gravity) {
         accumulator += delta;
         
         /* 
@@ -209,39 +498,82 @@ public class GameWorld implements Disposable, Serializable {
          * delays. This is done to prevent the physics engine from exacerbating
          * the situation.
          */
-        if (accumulator > MAX_STEPS_PER_FRAME * TIME_STEP) {
-            accumulator = TIME_STEP;
+        if (accumulator > MAX_STEPS_PER_FRAME * timeStep) {
+            accumulator = timeStep;
+            ++clampCount;
         }
         
-        while (accumulator >= TIME_STEP) {
-            world.step(TIME_STEP, VELOCITY_ITERATIONS, POSITION_ITERATIONS);
-            accumulator -= TIME_STEP;
+        while (accumulator >= timeStep) {
+            singleStep(gravity);
+            accumulator -= timeStep;
         }
     }
     
-    private void init(float width, float height) {
+    /**
+     * Takes one physics step. The marble leaving the maze for the first time
+     * solves it.
+     */
+    private void singleStep(Vector2 gravity) {
+        if (recording != null) {
+            recording.addStep(gravity);
+        }
+        prevMarblePos.set(physics.getMarblePosition());
+        physics.step(timeStep, gravity);
+        ++stepCount;
+        
+        boolean nowInMaze = physics.isMarbleInMaze();
+        if (inMaze && !nowInMaze && !solved) {
+            solved = true;
+            events.add(EventQueue.SOLVED, 0.0f, null);
+        }
+        inMaze = nowInMaze;
+    }
+    
+    private Physics createPhysics() {
+        switch (backend) {
+        case GRID:
+            return new GridPhysics(width, height, mazeDef, marblePos,
+                    MARBLE_RADIUS, events);
+        default:
+            return new Box2DPhysics(width, height, mazeDef, marblePos,
+                    MARBLE_RADIUS, events);
+        }
+    }
+    
+    /** Sets the dimensions, enlarged to hold a streamed maze if need be. */
+    private void setSize(float width, float height) {
+        if (mazeDef.isStreamed()) {
+            width = Math.max(width,
+                    mazeDef.maze.getWidth() + 2.0f * STREAMED_MARGIN);
+            height = Math.max(height,
+                    mazeDef.maze.getHeight() + 2.0f * STREAMED_MARGIN);
+        }
         this.width = width;
         this.height = height;
-        contactListener = new GameWorldContactListener();
+    }
+    
+    private void init(float width, float height) {
+        setSize(width, height);
         eventListeners = new ArrayList<GameWorldListener>();
-        world = new World(new Vector2(), true);
-        world.setContactListener(contactListener);
-        new DefaultBorders(world, width, height);
-        
-        if (mazeDef == null) {
-            mazeDef = MazeHelper.getMediumMaze();
+        events = new EventQueue(EVENT_CAPACITY);
+        if (backend == null) {
+            backend = PhysicsBackend.BOX2D;
         }
-        mazeBox = new DefaultMazeBox(world, mazeDef);
-        
+        physics = createPhysics();
         if (marblePos == null) {
-            marblePos = mazeBox.getTileLocation(mazeDef.start);
+            marblePos = physics.getTileLocation(mazeDef.start, new Vector2());
         }
-        marble = new DefaultMarble(world, marblePos, MARBLE_RADIUS);
+        
+        timeStep = TIME_STEP;
+        prevMarblePos = new Vector2(marblePos);
+        renderMarblePos = new Vector2();
+        restGravity = new Vector2();
+        restTime = 0.0f;
     }
     
     /** Custom serialization routine. */
     private void writeObject(ObjectOutputStream out) throws IOException {
-        marblePos.set(marble.getPosition()); // Grab the most recent position.
+        marblePos.set(physics.getMarblePosition()); // Grab the most recent position.
         out.defaultWriteObject(); // Then, write it out with the other data.
     }
 
@@ -252,58 +584,4 @@ public class GameWorld implements Disposable, Serializable {
         in.defaultReadObject();
         init(width, height);
     }
-    
-    private class GameWorldContactListener implements ContactListener {
-        @Override
-        public void beginContact(Contact contact) {
-            if (checkSensor(contact)) {
-                inMaze = true;
-            }
-        }
-
-        @Override
-        public void endContact(Contact contact) {
-            if (checkSensor(contact)) {
-                if (!solved) {
-                    solved = true;
-                    for (GameWorldListener listener : eventListeners) {
-                        listener.mazeSolved();
-                    }
-                }
-                
-                inMaze = false;
-            }
-        }
-
-        @Override
-        public void preSolve(Contact contact, Manifold oldManifold) {
-        }
-
-        @Override
-        public void postSolve(Contact contact, ContactImpulse contactImpulse) {
-            float impulse = contactImpulse.getNormalImpulses()[0];
-            if (impulse > IMPULSE_THRESHOLD) {
-                /* 
-                 * The marble is the only moving object so one of these
-                 * fixtures must belong to the marble.
-                 */
-                Fixture a = contact.getFixtureA();
-                Fixture b = contact.getFixtureB();
-                
-                /* 
-                 * A ClassCastException could be thrown here if the user data
-                 * of a body doesn't point to an entity for some reason.
-                 */
-                Entity entityA = (Entity) a.getBody().getUserData();
-                Fixture otherFixture = entityA instanceof DefaultMarble ? b : a;
-                Entity otherEntity = (Entity) otherFixture.getBody().getUserData();
-                Material material = Material.getType(otherEntity);
-                
-                /* Marble-hitting-wall event. */
-                for (GameWorldListener listener : eventListeners) {
-                    listener.marbleHit(impulse, material);
-                }
-            }
-        }
-    }
 }
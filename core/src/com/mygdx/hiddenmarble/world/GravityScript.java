@@ -0,0 +1,14 @@
+package com.mygdx.hiddenmarble.world;
+
+import com.badlogic.gdx.math.Vector2;
+
+/** Supplies the world's gravity for scripted (non-interactive) simulations. */
+public interface GravityScript {
+    /**
+     * Writes the gravity for the specified physics step into the out vector.
+     * 
+     * @param step the index of the physics step, starting from 0
+     * @param out the vector receiving the gravity
+     */
+    void getGravity(long step, Vector2 out);
+}
@@ -0,0 +1,329 @@
+package com.mygdx.hiddenmarble.world;
+
+import static com.mygdx.hiddenmarble.utils.BodyHelper.BORDER_FRICTION;
+import static com.mygdx.hiddenmarble.utils.BodyHelper.BORDER_RESTITUTION;
+import static com.mygdx.hiddenmarble.utils.BodyHelper.MARBLE_DENSITY;
+import static com.mygdx.hiddenmarble.utils.BodyHelper.MARBLE_FRICTION;
+import static com.mygdx.hiddenmarble.utils.BodyHelper.MARBLE_RESTITUTION;
+import static com.mygdx.hiddenmarble.utils.BodyHelper.MAZE_BOX_FRICTION;
+import static com.mygdx.hiddenmarble.utils.BodyHelper.MAZE_BOX_RESTITUTION;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Transform;
+import com.mygdx.hiddenmarble.entities.Material;
+import com.mygdx.hiddenmarble.entities.MazeFixtureDef;
+import com.mygdx.hiddenmarble.utils.BodyHelper;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeDef;
+
+import maze.Point;
+
+/**
+ * The game's physics in plain Java: a spinning circle colliding with the
+ * wall tiles of the maze and with the borders. The maze's corner tiles are
+ * rounded like the Box2D corner fixtures, and the marble counts as in the
+ * maze while its center is over the maze's grid.
+ * <p>
+ * Each step the marble moves in sub-steps no longer than a fraction of its
+ * radius, and after each sub-step it is pushed out of the tiles it overlaps,
+ * so it cannot pass through a wall however fast it goes. Contacts are
+ * resolved with impulses like Box2D's: Box2D's friction and restitution
+ * mixing, its velocity threshold for bounces and a rolling marble. The whole
+ * state is the marble's position, velocity and spin. Only the tiles under the
+ * marble are looked at, so a step costs the same in a maze of any size.
+ */
+class GridPhysics implements Physics {
+    /** The longest distance the marble moves between collision checks. */
+    private static final float MAX_MOVE = 0.2f;
+
+    private static final float WALL_FRICTION =
+            (float) Math.sqrt(MARBLE_FRICTION * MAZE_BOX_FRICTION);
+    private static final float WALL_RESTITUTION =
+            Math.max(MARBLE_RESTITUTION, MAZE_BOX_RESTITUTION);
+    private static final float GLASS_FRICTION =
+            (float) Math.sqrt(MARBLE_FRICTION * BORDER_FRICTION);
+    private static final float GLASS_RESTITUTION =
+            Math.max(MARBLE_RESTITUTION, BORDER_RESTITUTION);
+
+    private final EventQueue events;
+    private final float halfWidth;
+    private final float halfHeight;
+    private final float radius;
+    private final float mass;
+    private final float inertia;
+    private final Vector2 position;
+    private final Vector2 velocity;
+    private float spin;
+    private int contactCount;
+
+    /* The maze: solid tiles by row, top row first, and the box's edges. */
+    private boolean[] solid;
+    private int mazeWidth;
+    private int mazeHeight;
+    private float left;
+    private float top;
+    private Transform mazeTransform;
+    private List<MazeFixtureDef> fixtureDefs;
+
+    /**
+     * Creates the physics with the marble at rest.
+     *
+     * @param width the width of the borders in Box2D meters
+     * @param height the height of the borders in Box2D meters
+     * @param mazeDef the maze definition
+     * @param marblePos the marble's position, or null for the start tile
+     * @param radius the marble radius in Box2D meters
+     * @param events where hits are recorded
+     */
+    GridPhysics(float width, float height, MazeDef mazeDef,
+            Vector2 marblePos, float radius, EventQueue events) {
+
+        this.events = events;
+        halfWidth = width / 2.0f;
+        halfHeight = height / 2.0f;
+        this.radius = radius;
+        mass = MARBLE_DENSITY * MathUtils.PI * radius * radius;
+        inertia = 0.5f * mass * radius * radius;
+        velocity = new Vector2();
+        setMaze(mazeDef);
+        position = marblePos != null
+                ? new Vector2(marblePos)
+                : getTileLocation(mazeDef.start, new Vector2());
+    }
+
+    @Override
+    public void step(float timeStep, Vector2 gravity) {
+        velocity.mulAdd(gravity, timeStep);
+        contactCount = 0;
+
+        int moves = (int) Math.ceil(velocity.len() * timeStep / MAX_MOVE);
+        float dt = timeStep / Math.max(1, moves);
+        for (int i = Math.max(1, moves); i > 0; --i) {
+            position.mulAdd(velocity, dt);
+            collideBorders();
+            collideTiles();
+        }
+    }
+
+    @Override
+    public void setMaze(MazeDef mazeDef) {
+        mazeWidth = mazeDef.maze.getWidth();
+        mazeHeight = mazeDef.maze.getHeight();
+        left = -mazeWidth / 2.0f;
+        top = mazeHeight / 2.0f;
+        solid = new boolean[mazeWidth * mazeHeight];
+        for (int y = 0; y < mazeHeight; ++y) {
+            for (int x = 0; x < mazeWidth; ++x) {
+                solid[y * mazeWidth + x] = mazeDef.maze.isWall(x, y);
+            }
+        }
+        solid[mazeDef.exit.getY() * mazeWidth + mazeDef.exit.getX()] = false;
+
+        Vector2 offset = BodyHelper.getMazeBoxOffset(mazeDef);
+        mazeTransform = new Transform(offset.scl(-1.0f), 0.0f);
+        fixtureDefs = Collections.unmodifiableList(mazeDef.isStreamed()
+                ? BodyHelper.getMazeFrameFixtureDefs(mazeDef)
+                : BodyHelper.getMazeFixtureDefs(mazeDef));
+    }
+
+    @Override
+    public void resetMarble(Vector2 position) {
+        this.position.set(position);
+        velocity.setZero();
+        spin = 0.0f;
+    }
+
+    @Override
+    public Vector2 getMarblePosition() {
+        return position;
+    }
+
+    @Override
+    public Vector2 getMarbleVelocity() {
+        return velocity;
+    }
+
+    @Override
+    public void setMarbleVelocity(float x, float y) {
+        velocity.set(x, y);
+    }
+
+    @Override
+    public boolean isMarbleInMaze() {
+        int x = MathUtils.floor(position.x - left);
+        int y = MathUtils.floor(top - position.y);
+        return x >= 0 && x < mazeWidth && y >= 0 && y < mazeHeight;
+    }
+
+    @Override
+    public Vector2 getTileLocation(Point tile, Vector2 out) {
+        return out.set(left + tile.getX() + 0.5f, top - tile.getY() - 0.5f);
+    }
+
+    @Override
+    public Transform getMazeTransform() {
+        return mazeTransform;
+    }
+
+    @Override
+    public List<MazeFixtureDef> getMazeFixtureDefs() {
+        return fixtureDefs;
+    }
+
+    /** Counts the marble as the only body and touching objects as contacts. */
+    @Override
+    public void getStats(WorldStats out) {
+        out.bodyCount = 1;
+        out.fixtureCount = 0;
+        out.contactCount = contactCount;
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    private void collideBorders() {
+        float overlap = -halfWidth - (position.x - radius);
+        if (overlap > 0.0f) {
+            resolve(1.0f, 0.0f, overlap, true);
+        }
+        overlap = position.x + radius - halfWidth;
+        if (overlap > 0.0f) {
+            resolve(-1.0f, 0.0f, overlap, true);
+        }
+        overlap = -halfHeight - (position.y - radius);
+        if (overlap > 0.0f) {
+            resolve(0.0f, 1.0f, overlap, true);
+        }
+        overlap = position.y + radius - halfHeight;
+        if (overlap > 0.0f) {
+            resolve(0.0f, -1.0f, overlap, true);
+        }
+    }
+
+    /** Resolves overlaps with the tiles under the marble's bounding box. */
+    private void collideTiles() {
+        int x0 = Math.max(0, MathUtils.floor(position.x - radius - left));
+        int x1 = Math.min(mazeWidth - 1,
+                MathUtils.floor(position.x + radius - left));
+        int y0 = Math.max(0, MathUtils.floor(top - position.y - radius));
+        int y1 = Math.min(mazeHeight - 1,
+                MathUtils.floor(top - position.y + radius));
+        for (int y = y0; y <= y1; ++y) {
+            for (int x = x0; x <= x1; ++x) {
+                if (solid[y * mazeWidth + x]) {
+                    collideTile(x, y);
+                }
+            }
+        }
+    }
+
+    private void collideTile(int x, int y) {
+        float minX = left + x;
+        float maxY = top - y;
+        float minY = maxY - 1.0f;
+        float maxX = minX + 1.0f;
+
+        /*
+         * A corner tile is a quarter disc of radius 1 around its inner
+         * corner; outside its quadrant, it is the same as a square tile.
+         */
+        boolean cornerX = x == 0 || x == mazeWidth - 1;
+        boolean cornerY = y == 0 || y == mazeHeight - 1;
+        if (cornerX && cornerY) {
+            float originX = x == 0 ? maxX : minX;
+            float originY = y == 0 ? minY : maxY;
+            float dx = position.x - originX;
+            float dy = position.y - originY;
+            if ((x == 0 ? dx < 0.0f : dx > 0.0f)
+                    && (y == 0 ? dy > 0.0f : dy < 0.0f)) {
+
+                float dist = (float) Math.sqrt(dx * dx + dy * dy);
+                float overlap = 1.0f + radius - dist;
+                if (overlap > 0.0f && dist > 0.0f) {
+                    resolve(dx / dist, dy / dist, overlap, false);
+                }
+                return;
+            }
+        }
+
+        float dx = position.x - MathUtils.clamp(position.x, minX, maxX);
+        float dy = position.y - MathUtils.clamp(position.y, minY, maxY);
+        float dist2 = dx * dx + dy * dy;
+        if (dist2 >= radius * radius) {
+            return;
+        }
+        if (dist2 > 0.0f) {
+            float dist = (float) Math.sqrt(dist2);
+            resolve(dx / dist, dy / dist, radius - dist, false);
+            return;
+        }
+
+        /* The center is inside the tile: leaves by the nearest side. */
+        float toLeft = position.x - minX;
+        float toRight = maxX - position.x;
+        float toBottom = position.y - minY;
+        float toTop = maxY - position.y;
+        float nearest = Math.min(Math.min(toLeft, toRight),
+                Math.min(toBottom, toTop));
+        if (nearest == toLeft) {
+            resolve(-1.0f, 0.0f, toLeft + radius, false);
+        } else if (nearest == toRight) {
+            resolve(1.0f, 0.0f, toRight + radius, false);
+        } else if (nearest == toBottom) {
+            resolve(0.0f, -1.0f, toBottom + radius, false);
+        } else {
+            resolve(0.0f, 1.0f, toTop + radius, false);
+        }
+    }
+
+    /**
+     * Pushes the marble out of an obstacle and, if it is moving into it,
+     * applies the contact impulse: a normal impulse with restitution for
+     * impacts faster than the velocity threshold, and a friction impulse at
+     * the contact point that also changes the marble's spin.
+     *
+     * @param nx the contact normal, pointing towards the marble
+     * @param ny the contact normal, pointing towards the marble
+     * @param overlap how far the marble is inside the obstacle
+     * @param glass whether the obstacle is a border rather than a wall
+     */
+    private void resolve(float nx, float ny, float overlap, boolean glass) {
+        position.add(nx * overlap, ny * overlap);
+        ++contactCount;
+
+        float normalSpeed = velocity.x * nx + velocity.y * ny;
+        if (normalSpeed >= 0.0f) {
+            return;
+        }
+        float restitution = glass ? GLASS_RESTITUTION : WALL_RESTITUTION;
+        float friction = glass ? GLASS_FRICTION : WALL_FRICTION;
+        if (-normalSpeed < GameWorld.VELOCITY_THRESHOLD) {
+            restitution = 0.0f;
+        }
+        float normalImpulse = -(1.0f + restitution) * normalSpeed * mass;
+        velocity.add(nx * normalImpulse / mass, ny * normalImpulse / mass);
+
+        /*
+         * The contact point is radius away against the normal, so the spin
+         * adds spin * radius to its speed along the tangent (-ny, nx).
+         */
+        float tx = -ny;
+        float ty = nx;
+        float slip = velocity.x * tx + velocity.y * ty + spin * radius;
+        float tangentMass = 1.0f / (1.0f / mass + radius * radius / inertia);
+        float maxFriction = friction * normalImpulse;
+        float tangentImpulse =
+                MathUtils.clamp(-slip * tangentMass, -maxFriction, maxFriction);
+        velocity.add(tx * tangentImpulse / mass, ty * tangentImpulse / mass);
+        spin += radius * tangentImpulse / inertia;
+
+        if (normalImpulse > GameWorld.IMPULSE_THRESHOLD) {
+            events.add(EventQueue.HIT, normalImpulse,
+                    glass ? Material.GLASS : Material.WOOD);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.mygdx.hiddenmarble.world;
+
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.ACCEL_MULTIPLIER;
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.BOX2D_SCALE;
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.HEIGHT;
+import static com.mygdx.hiddenmarble.ui.HiddenMarble.WIDTH;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Disposable;
+import com.mygdx.hiddenmarble.utils.MazeHelper;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeDef;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeSize;
+
+/**
+ * Steps a {@link GameWorld} with scripted gravity at full CPU speed. No
+ * graphics, audio or preferences backend is needed; only the Box2D natives
+ * have to be on the library path, and not even those on the grid engine.
+ */
+public class HeadlessSimulation implements Disposable {
+    /** Standard gravity as reported by the accelerometer. */
+    private static final float EARTH_GRAVITY = 9.8f;
+    
+    /** Tilts the device in a slow circle, one lap every 4 seconds. */
+    public static final GravityScript CIRCLE = new GravityScript() {
+        @Override
+        public void getGravity(long step, Vector2 out) {
+            float laps = step * GameWorld.TIME_STEP / 4.0f;
+            float angle = laps * MathUtils.PI2;
+            out.set(MathUtils.cos(angle), MathUtils.sin(angle));
+            out.scl(0.5f * EARTH_GRAVITY * ACCEL_MULTIPLIER);
+        }
+    };
+    
+    private final GameWorld world;
+    private final GravityScript script;
+    private final Vector2 gravity;
+    
+    /**
+     * Creates a simulation of the specified maze in a screen-sized world on
+     * Box2D.
+     * 
+     * @param  mazeDef the maze definition
+     * @param  script the gravity script
+     * @throws NullPointerException if either argument is null
+     */
+    public HeadlessSimulation(MazeDef mazeDef, GravityScript script) {
+        this(mazeDef, script, PhysicsBackend.BOX2D);
+    }
+    
+    /**
+     * Creates a simulation of the specified maze in a screen-sized world on
+     * the specified physics engine.
+     * 
+     * @param  mazeDef the maze definition
+     * @param  script the gravity script
+     * @param  backend the physics engine
+     * @throws NullPointerException if any argument is null
+     */
+    public HeadlessSimulation(MazeDef mazeDef, GravityScript script,
+            PhysicsBackend backend) {
+        
+        if (script == null) {
+            throw new NullPointerException();
+        }
+        world = new GameWorld(WIDTH * BOX2D_SCALE, HEIGHT * BOX2D_SCALE, mazeDef,
+                backend);
+        this.script = script;
+        gravity = new Vector2();
+    }
+    
+    /**
+     * Advances the simulation by the specified number of physics steps.
+     * 
+     * @param  steps the number of steps
+     * @return the elapsed wall-clock time in nanoseconds
+     */
+    public long run(long steps) {
+        long begin = System.nanoTime();
+        for (long i = 0; i < steps; ++i) {
+            script.getGravity(world.getStepCount(), gravity);
+            world.update(world.getTimeStep(), gravity);
+        }
+        return System.nanoTime() - begin;
+    }
+    
+    /** Returns the simulated world. */
+    public GameWorld getWorld() {
+        return world;
+    }
+    
+    @Override
+    public void dispose() {
+        world.dispose();
+    }
+    
+    /**
+     * Measures physics throughput. Arguments (all optional): the number of
+     * steps per thread, the maze size (small, medium, large or expedition),
+     * the number of threads, each of which simulates its own world, and the
+     * physics engine (box2d or grid).
+     */
+    public static void main(String[] args) throws InterruptedException {
+        final long steps = args.length > 0 ? Long.parseLong(args[0]) : 100000L;
+        final String size = args.length > 1 ? args[1] : "large";
+        int threadCount = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        final PhysicsBackend backend = args.length > 3
+                ? PhysicsBackend.valueOf(args[3].toUpperCase())
+                : PhysicsBackend.BOX2D;
+        
+        final long[] nanos = new long[threadCount];
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; ++i) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    HeadlessSimulation sim =
+                            new HeadlessSimulation(getMaze(size), CIRCLE,
+                                    backend);
+                    sim.run(steps / 10); // Warm-up.
+                    nanos[index] = sim.run(steps);
+                    sim.dispose();
+                }
+            });
+            threads[i].start();
+        }
+        
+        double total = 0.0;
+        for (int i = 0; i < threadCount; ++i) {
+            threads[i].join();
+            double rate = steps / (nanos[i] / 1e9);
+            total += rate;
+            System.out.printf("thread %d: %.0f steps/s%n", i, rate);
+        }
+        System.out.printf("%s maze, %s, %d thread(s): %.0f steps/s total, "
+                + "%.0f steps/s per thread%n",
+                size, backend, threadCount, total, total / threadCount);
+    }
+    
+    private static MazeDef getMaze(String size) {
+        if (size.equals("small")) {
+            return MazeHelper.getSmallMaze();
+        } else if (size.equals("medium")) {
+            return MazeHelper.getMediumMaze();
+        } else if (size.equals("large")) {
+            return MazeHelper.getLargeMaze();
+        } else if (size.equals("expedition")) {
+            MazeSize expedition = MazeSize.EXPEDITION;
+            return MazeHelper.getMaze(expedition.width, expedition.height,
+                    MathUtils.random.nextLong());
+        }
+        throw new IllegalArgumentException("Unknown maze size: " + size);
+    }
+}
@@ -0,0 +1,65 @@
+package com.mygdx.hiddenmarble.world;
+
+import java.util.List;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Transform;
+import com.badlogic.gdx.utils.Disposable;
+import com.mygdx.hiddenmarble.entities.MazeFixtureDef;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeDef;
+
+import maze.Point;
+
+/**
+ * The simulation behind a {@link GameWorld}: the marble, the maze box and the
+ * borders. The world keeps the clock, the events and everything saved; a
+ * physics engine only moves the marble and reports its collisions.
+ */
+interface Physics extends Disposable {
+    /**
+     * Takes one step under the specified gravity. Collisions harder than
+     * {@link GameWorld#IMPULSE_THRESHOLD} are added to the world's event
+     * queue as hits.
+     *
+     * @param timeStep the step length in seconds
+     * @param gravity the gravity for the step
+     */
+    void step(float timeStep, Vector2 gravity);
+
+    /** Replaces the maze box. The marble stays where it is. */
+    void setMaze(MazeDef mazeDef);
+
+    /** Puts the marble at the specified position, at rest. */
+    void resetMarble(Vector2 position);
+
+    /** Returns the marble's position. The vector must not be modified. */
+    Vector2 getMarblePosition();
+
+    /** Returns the marble's velocity. The vector must not be modified. */
+    Vector2 getMarbleVelocity();
+
+    void setMarbleVelocity(float x, float y);
+
+    /** Returns true if the marble was in the maze after the last step. */
+    boolean isMarbleInMaze();
+
+    /**
+     * Writes the world location of the specified maze tile into the out
+     * vector.
+     *
+     * @return the out vector
+     */
+    Vector2 getTileLocation(Point tile, Vector2 out);
+
+    /** Returns the transform of the maze box. */
+    Transform getMazeTransform();
+
+    /**
+     * Returns an unmodifiable list of maze box fixture definitions. For a
+     * streamed maze, only the corners and the sensor are listed.
+     */
+    List<MazeFixtureDef> getMazeFixtureDefs();
+
+    /** Writes the engine's object counts into the specified stats. */
+    void getStats(WorldStats out);
+}
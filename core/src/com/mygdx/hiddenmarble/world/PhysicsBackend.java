@@ -0,0 +1,15 @@
+package com.mygdx.hiddenmarble.world;
+
+/** The physics engines a {@link GameWorld} can run on. */
+public enum PhysicsBackend {
+    /** Box2D through JNI. Needs the Box2D natives. */
+    BOX2D,
+
+    /**
+     * A pure Java engine made for this game: one circle against the maze's
+     * tile grid and the rectangular borders. It uses the same friction and
+     * restitution as Box2D but does not reproduce its trajectories, so
+     * recordings only replay on the engine they were made with.
+     */
+    GRID
+}
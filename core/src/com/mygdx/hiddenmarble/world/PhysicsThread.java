@@ -0,0 +1,364 @@
+package com.mygdx.hiddenmarble.world;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.Vector2;
+import com.mygdx.hiddenmarble.entities.Material;
+
+/**
+ * Steps a {@link GameWorld} on its own thread so physics spikes stay out of
+ * the frame time. The render thread hands over gravity and reads back
+ * {@link WorldSnapshot}s without ever blocking: snapshots go through a
+ * lock-free triple buffer (a double buffer with a spare slot, so that neither
+ * side has to wait for the other to finish).
+ * <p>
+ * While the thread is running, the world must not be touched from anywhere
+ * else; use {@link #post} for work that only reads it. Stop the thread before
+ * resetting or disposing the world.
+ * Listeners registered here are called on the render thread, from
+ * {@link #update}.
+ */
+public class PhysicsThread {
+    /** Flags the middle slot as published but not yet read. */
+    private static final int FRESH = 4;
+    /** Extracts the slot index from the exchange state. */
+    private static final int INDEX_MASK = 3;
+    /** The shortest time between frames requested for rolling sounds. */
+    private static final long ROLL_FRAME_NANOS = 100000000L;
+    
+    private final GameWorld world;
+    private final WorldSnapshot[] slots;
+    private final AtomicInteger middle;
+    private final AtomicLong gravityBits;
+    private final List<GameWorldListener> eventListeners;
+    private final Queue<Runnable> tasks;
+    private final Vector2 marblePos;
+    private final WorldStats stats;
+    
+    private volatile boolean running;
+    private volatile GravityScript gravityScript;
+    private volatile boolean requestFrames;
+    private volatile boolean sampleStats;
+    private Thread thread;
+    private long stepNanos;
+    
+    /* Owned by the physics thread while it runs. */
+    private int back;
+    private long lastFrameRequest;
+    private final Vector2 gravity;
+    private final Vector2 prevMarblePos;
+    
+    /* Owned by the render thread. */
+    private int front;
+    
+    /**
+     * Creates a physics thread for the specified world. The thread is not
+     * started.
+     */
+    public PhysicsThread(GameWorld world) {
+        this.world = world;
+        slots = new WorldSnapshot[] {
+            new WorldSnapshot(), new WorldSnapshot(), new WorldSnapshot()
+        };
+        middle = new AtomicInteger();
+        gravityBits = new AtomicLong();
+        eventListeners = new ArrayList<GameWorldListener>();
+        tasks = new ConcurrentLinkedQueue<Runnable>();
+        marblePos = new Vector2();
+        stats = new WorldStats();
+        gravity = new Vector2();
+        prevMarblePos = new Vector2();
+        world.addListener(new EventRecorder());
+    }
+    
+    /**
+     * Registers a listener that is called on the render thread.
+     * 
+     * @throws NullPointerException if the listener is null
+     */
+    public void addListener(GameWorldListener listener) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+        eventListeners.add(listener);
+    }
+    
+    /** Unregisters a listener. */
+    public void removeListener(GameWorldListener listener) {
+        eventListeners.remove(listener);
+    }
+    
+    /** Starts stepping the world. Does nothing if already running. */
+    public void start() {
+        if (running) {
+            return;
+        }
+        stepNanos = (long) (world.getTimeStep() * 1e9);
+        
+        /* Starts from a clean exchange; stale events are dropped. */
+        Vector2 position = world.getMarblePosition();
+        for (WorldSnapshot s : slots) {
+            s.reset(position, world.isMarbleInMaze(), world.isSolved());
+        }
+        prevMarblePos.set(position);
+        front = 0;
+        middle.set(1);
+        back = 2;
+        
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "physics");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Stops stepping the world and waits for the physics thread to finish.
+     * Afterwards the world may be used from the calling thread again.
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        thread = null;
+        runTasks(); // Posted after the last step.
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Runs a task that needs the world, such as taking a save snapshot,
+     * between two steps on the physics thread. If the thread is not running,
+     * the task is run right away on the calling thread. Call this from the
+     * render thread.
+     * 
+     * @throws NullPointerException if the task is null
+     */
+    public void post(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (running) {
+            tasks.add(task);
+        } else {
+            task.run();
+        }
+    }
+    
+    /**
+     * Sets where the physics thread gets gravity from. With a script, gravity
+     * is polled before every step and the gravity passed to {@link #update}
+     * is ignored, so the world reacts even when no frames are drawn.
+     * 
+     * @param script the gravity source, or null to use {@link #update}
+     */
+    public void setGravityScript(GravityScript script) {
+        gravityScript = script;
+    }
+    
+    /**
+     * Sets whether the physics thread asks the backend for a frame when there
+     * are events to deliver. Use this with non-continuous rendering so that
+     * sounds keep playing: hits, stops and the maze being solved get a frame
+     * right away, rolling gets one at most every 0.1 seconds.
+     */
+    public void setRequestRendering(boolean requestFrames) {
+        this.requestFrames = requestFrames;
+    }
+    
+    /**
+     * Sets whether the world's counters are sampled after every step for
+     * {@link #getStats}. Sampling costs a little time on the physics thread.
+     */
+    public void setSampleStats(boolean sampleStats) {
+        this.sampleStats = sampleStats;
+    }
+    
+    /**
+     * Writes the counters sampled after the latest step into the specified
+     * stats. Nothing is sampled unless {@link #setSampleStats} turned it on.
+     */
+    public void getStats(WorldStats out) {
+        synchronized (stats) {
+            out.set(stats);
+        }
+    }
+    
+    /** Returns true if the physics thread is running. */
+    public boolean isRunning() {
+        return running;
+    }
+    
+    /**
+     * Publishes the gravity, picks up the latest snapshot and sends its events
+     * to the listeners. Call this once per frame from the render thread.
+     * 
+     * @param gravity the world's gravity
+     */
+    public void update(Vector2 gravity) {
+        long bits = (long) Float.floatToRawIntBits(gravity.x) << 32;
+        bits |= Float.floatToRawIntBits(gravity.y) & 0xffffffffL;
+        gravityBits.set(bits);
+        
+        /*
+         * The physics thread may take an unread snapshot back, so the slot
+         * is claimed only if it is still the one seen flagged.
+         */
+        int m = middle.get();
+        if ((m & FRESH) != 0 && middle.compareAndSet(m, front)) {
+            front = m & INDEX_MASK;
+            WorldSnapshot snapshot = slots[front];
+            snapshot.dispatch(eventListeners);
+            snapshot.clearEvents();
+        }
+    }
+    
+    /** Returns the snapshot most recently picked up by {@link #update}. */
+    public WorldSnapshot getSnapshot() {
+        return slots[front];
+    }
+    
+    /**
+     * Returns the marble's position for drawing, interpolated from the latest
+     * snapshot. The returned vector is reused by later calls.
+     */
+    public Vector2 getMarbleRenderPosition() {
+        return slots[front].getMarblePosition(System.nanoTime(), stepNanos,
+                marblePos);
+    }
+    
+    private void loop() {
+        long next = System.nanoTime();
+        while (running) {
+            GravityScript script = gravityScript;
+            if (script != null) {
+                script.getGravity(world.getStepCount(), gravity);
+            } else {
+                long bits = gravityBits.get();
+                gravity.set(Float.intBitsToFloat((int) (bits >>> 32)),
+                        Float.intBitsToFloat((int) bits));
+            }
+            runTasks();
+            world.update(world.getTimeStep(), gravity);
+            publish();
+            if (sampleStats) {
+                synchronized (stats) {
+                    world.getStats(stats);
+                }
+            }
+            
+            next += stepNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            } else if (-wait > stepNanos) {
+                next = System.nanoTime(); // Fell behind; don't try to catch up.
+            }
+        }
+    }
+    
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+    
+    private void publish() {
+        /*
+         * If the last snapshot has not been read, it is taken back and this
+         * step's events are added after its own. Handing it over with a later
+         * snapshot still to come would deliver its events out of order. Both
+         * threads claim a flagged slot by CAS, so exactly one of them gets it.
+         */
+        int old = middle.get();
+        boolean retaken = (old & FRESH) != 0 && middle.compareAndSet(old, back);
+        WorldSnapshot snapshot = slots[back];
+        if (retaken) {
+            /*
+             * The back slot now sits unflagged in the middle, where the
+             * render thread leaves it alone.
+             */
+            WorldSnapshot unread = slots[old & INDEX_MASK];
+            unread.appendEvents(snapshot);
+            snapshot.clearEvents();
+            snapshot = unread;
+        }
+        
+        Vector2 position = world.getMarblePosition();
+        snapshot.setState(prevMarblePos, position, System.nanoTime(),
+                world.isMarbleInMaze(), world.isSolved());
+        prevMarblePos.set(position);
+        if (requestFrames) {
+            requestFrame(snapshot);
+        }
+        
+        if (retaken) {
+            middle.set(old);
+        } else {
+            /*
+             * Either nothing was flagged or the render thread claimed the
+             * snapshot first. Only this thread sets FRESH, so the slot in the
+             * middle now has been read and stays put until this exchange.
+             */
+            back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+            slots[back].clearEvents();
+        }
+    }
+    
+    private void requestFrame(WorldSnapshot snapshot) {
+        long now = System.nanoTime();
+        if (snapshot.hasDiscreteEvents() || snapshot.hasRolled()
+                && now - lastFrameRequest >= ROLL_FRAME_NANOS) {
+            Gdx.graphics.requestRendering();
+            lastFrameRequest = now;
+        }
+    }
+    
+    /** Collects world events into the snapshot being written. */
+    private class EventRecorder implements GameWorldListener {
+        @Override
+        public void marbleHit(float impulse, Material material) {
+            slots[back].addHit(impulse, material);
+        }
+
+        @Override
+        public void marbleRoll(float len2, Material material) {
+            slots[back].addRoll(len2, material);
+        }
+
+        @Override
+        public void marbleStop() {
+            slots[back].addStop();
+        }
+
+        @Override
+        public void mazeSolved() {
+            slots[back].addSolved();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.mygdx.hiddenmarble.world;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.mygdx.hiddenmarble.utils.MazeHelper;
+import com.mygdx.hiddenmarble.utils.MazeHelper.MazeDef;
+
+/**
+ * A recorded play session: everything needed to rebuild the world (maze seed
+ * and size, world size, time step, physics engine) plus the gravity of every
+ * physics step. Recordings replay exactly only on the engine they name.
+ * Gravity is stored run-length encoded since it only changes once per frame
+ * and not at all while the device lies still.
+ */
+public class SessionRecording {
+    /** "HMRS" in ASCII. */
+    private static final int MAGIC = 0x484d5253;
+    private static final int VERSION = 2;
+    /** Recordings before the physics engine was stored; all are Box2D. */
+    private static final int VERSION_BOX2D_ONLY = 1;
+    
+    private final float worldWidth;
+    private final float worldHeight;
+    private final float timeStep;
+    private final int mazeWidth;
+    private final int mazeHeight;
+    private final long seed;
+    private final PhysicsBackend backend;
+    
+    private final IntArray runLengths;
+    private final FloatArray gravityX;
+    private final FloatArray gravityY;
+    private long stepCount;
+    
+    /**
+     * Creates an empty recording of the specified world. Attach it with
+     * {@link GameWorld#setRecording} before the world's first step.
+     * 
+     * @throws IllegalArgumentException if the world's maze has no seed
+     */
+    public SessionRecording(GameWorld world) {
+        this(world.getWidth(), world.getHeight(), world.getTimeStep(),
+                world.getMazeDef(), world.getPhysicsBackend());
+    }
+    
+    private SessionRecording(float worldWidth, float worldHeight,
+            float timeStep, MazeDef mazeDef, PhysicsBackend backend) {
+        
+        if (!mazeDef.seeded) {
+            throw new IllegalArgumentException("Maze has no seed");
+        }
+        this.worldWidth = worldWidth;
+        this.worldHeight = worldHeight;
+        this.timeStep = timeStep;
+        mazeWidth = mazeDef.getCellWidth();
+        mazeHeight = mazeDef.getCellHeight();
+        seed = mazeDef.seed;
+        this.backend = backend;
+        runLengths = new IntArray();
+        gravityX = new FloatArray();
+        gravityY = new FloatArray();
+    }
+    
+    private SessionRecording(float worldWidth, float worldHeight,
+            float timeStep, int mazeWidth, int mazeHeight, long seed,
+            PhysicsBackend backend) {
+        
+        this.worldWidth = worldWidth;
+        this.worldHeight = worldHeight;
+        this.timeStep = timeStep;
+        this.mazeWidth = mazeWidth;
+        this.mazeHeight = mazeHeight;
+        this.seed = seed;
+        this.backend = backend;
+        runLengths = new IntArray();
+        gravityX = new FloatArray();
+        gravityY = new FloatArray();
+    }
+    
+    /**
+     * Reads a recording written by {@link #write}.
+     * 
+     * @throws IOException if an I/O error occurs or the data is not a
+     *         recording
+     */
+    public static SessionRecording read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a session recording");
+        }
+        int version = data.readInt();
+        if (version != VERSION && version != VERSION_BOX2D_ONLY) {
+            throw new IOException("Unsupported recording version " + version);
+        }
+        float worldWidth = data.readFloat();
+        float worldHeight = data.readFloat();
+        float timeStep = data.readFloat();
+        int mazeWidth = data.readInt();
+        int mazeHeight = data.readInt();
+        long seed = data.readLong();
+        PhysicsBackend backend = PhysicsBackend.BOX2D;
+        if (version != VERSION_BOX2D_ONLY) {
+            int ordinal = data.readUnsignedByte();
+            if (ordinal >= PhysicsBackend.values().length) {
+                throw new IOException("Unknown physics engine " + ordinal);
+            }
+            backend = PhysicsBackend.values()[ordinal];
+        }
+        SessionRecording ret = new SessionRecording(worldWidth, worldHeight,
+                timeStep, mazeWidth, mazeHeight, seed, backend);
+        int runCount = data.readInt();
+        for (int i = 0; i < runCount; ++i) {
+            int length = data.readInt();
+            if (length <= 0) {
+                throw new IOException("Corrupt run length");
+            }
+            ret.runLengths.add(length);
+            ret.gravityX.add(data.readFloat());
+            ret.gravityY.add(data.readFloat());
+            ret.stepCount += length;
+        }
+        return ret;
+    }
+    
+    /**
+     * Writes this recording. The stream is flushed but not closed.
+     * 
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeFloat(worldWidth);
+        data.writeFloat(worldHeight);
+        data.writeFloat(timeStep);
+        data.writeInt(mazeWidth);
+        data.writeInt(mazeHeight);
+        data.writeLong(seed);
+        data.writeByte(backend.ordinal());
+        data.writeInt(runLengths.size);
+        for (int i = 0; i < runLengths.size; ++i) {
+            data.writeInt(runLengths.get(i));
+            data.writeFloat(gravityX.get(i));
+            data.writeFloat(gravityY.get(i));
+        }
+        data.flush();
+    }
+    
+    /**
+     * Creates a world in the recording's initial state. The time step is set
+     * and nothing has been stepped yet.
+     */
+    public GameWorld createWorld() {
+        MazeDef mazeDef = MazeHelper.getMaze(mazeWidth, mazeHeight, seed);
+        GameWorld world = new GameWorld(worldWidth, worldHeight, mazeDef,
+                backend);
+        world.setTimeStep(timeStep);
+        return world;
+    }
+    
+    /** Returns the number of recorded physics steps. */
+    public long getStepCount() {
+        return stepCount;
+    }
+    
+    /** Returns the physics engine the session was recorded on. */
+    public PhysicsBackend getPhysicsBackend() {
+        return backend;
+    }
+    
+    /** Returns the maze seed. */
+    public long getSeed() {
+        return seed;
+    }
+    
+    /** Returns the number of gravity runs. */
+    int getRunCount() {
+        return runLengths.size;
+    }
+    
+    /** Returns the number of steps in the specified run. */
+    int getRunLength(int run) {
+        return runLengths.get(run);
+    }
+    
+    /** Writes the gravity of the specified run into the out vector. */
+    void getRunGravity(int run, Vector2 out) {
+        out.set(gravityX.get(run), gravityY.get(run));
+    }
+    
+    /** Appends one physics step. */
+    void addStep(Vector2 gravity) {
+        int last = runLengths.size - 1;
+        if (last >= 0 && runLengths.get(last) < Integer.MAX_VALUE
+                && sameBits(gravityX.get(last), gravity.x)
+                && sameBits(gravityY.get(last), gravity.y)) {
+            runLengths.incr(last, 1);
+        } else {
+            runLengths.add(1);
+            gravityX.add(gravity.x);
+            gravityY.add(gravity.y);
+        }
+        ++stepCount;
+    }
+    
+    private static boolean sameBits(float a, float b) {
+        return Float.floatToRawIntBits(a) == Float.floatToRawIntBits(b);
+    }
+}
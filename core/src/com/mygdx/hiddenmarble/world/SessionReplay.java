@@ -0,0 +1,123 @@
+package com.mygdx.hiddenmarble.world;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Replays a {@link SessionRecording} headlessly, one physics step at a time.
+ * Given the same Box2D build, the world goes through exactly the states of
+ * the recorded session.
+ */
+public class SessionReplay implements Disposable {
+    private final SessionRecording recording;
+    private final GameWorld world;
+    private final Vector2 gravity;
+    private int run;
+    private int stepInRun;
+    
+    /** Creates a replay positioned before the first recorded step. */
+    public SessionReplay(SessionRecording recording) {
+        this.recording = recording;
+        world = recording.createWorld();
+        gravity = new Vector2();
+    }
+    
+    /**
+     * Replays the next step.
+     * 
+     * @return false if the recording has ended
+     */
+    public boolean step() {
+        if (run >= recording.getRunCount()) {
+            return false;
+        }
+        recording.getRunGravity(run, gravity);
+        world.stepOnce(gravity);
+        if (++stepInRun >= recording.getRunLength(run)) {
+            stepInRun = 0;
+            ++run;
+        }
+        return true;
+    }
+    
+    /**
+     * Replays the rest of the recording, timing every step.
+     * 
+     * @param  stepNanos receives the duration of each step in nanoseconds,
+     *         indexed from the first step replayed; may be null
+     * @return the number of steps replayed
+     */
+    public long run(long[] stepNanos) {
+        long count = 0;
+        long before = System.nanoTime();
+        while (step()) {
+            long after = System.nanoTime();
+            if (stepNanos != null && count < stepNanos.length) {
+                stepNanos[(int) count] = after - before;
+            }
+            before = after;
+            ++count;
+        }
+        return count;
+    }
+    
+    /** Returns the replayed world. */
+    public GameWorld getWorld() {
+        return world;
+    }
+    
+    @Override
+    public void dispose() {
+        world.dispose();
+    }
+    
+    /**
+     * Replays a recording file and reports the throughput and the slowest
+     * steps. Arguments: the recording file and optionally the number of
+     * times to replay it.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SessionReplay <recording> [repeats]");
+            return;
+        }
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        
+        SessionRecording recording;
+        InputStream in = new FileInputStream(args[0]);
+        try {
+            recording = SessionRecording.read(in);
+        } finally {
+            in.close();
+        }
+        
+        long steps = recording.getStepCount();
+        if (steps > Integer.MAX_VALUE) {
+            throw new IOException("Recording too long to profile");
+        }
+        long[] stepNanos = new long[(int) steps];
+        for (int r = 0; r < repeats; ++r) {
+            SessionReplay replay = new SessionReplay(recording);
+            long begin = System.nanoTime();
+            replay.run(stepNanos);
+            long elapsed = System.nanoTime() - begin;
+            
+            int slowest = 0;
+            for (int i = 1; i < stepNanos.length; ++i) {
+                if (stepNanos[i] > stepNanos[slowest]) {
+                    slowest = i;
+                }
+            }
+            System.out.printf("replay %d: %d steps, %.0f steps/s, "
+                    + "slowest step %d (%.3f ms), marble at %s%n",
+                    r, steps, steps / (elapsed / 1e9), slowest,
+                    stepNanos.length > 0 ? stepNanos[slowest] / 1e6 : 0.0,
+                    replay.getWorld().getMarblePosition());
+            replay.dispose();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.mygdx.hiddenmarble.world;
+
+import java.util.List;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.mygdx.hiddenmarble.entities.Material;
+
+/**
+ * The state of a {@link GameWorld} after a physics step, as published by a
+ * {@link PhysicsThread}. Snapshots are written only by the physics thread and
+ * are read-only once handed to the render thread. World events that happened
+ * since the last snapshot was read are carried along, coalesced: hits are
+ * kept individually (up to a limit), rolling is reduced to its latest value.
+ */
+public class WorldSnapshot {
+    /** Maximum number of hit events carried by one snapshot. */
+    private static final int MAX_HITS = 16;
+    
+    private float prevMarbleX;
+    private float prevMarbleY;
+    private float marbleX;
+    private float marbleY;
+    private long time;
+    private boolean inMaze;
+    private boolean solved;
+    
+    private final float[] hitImpulses = new float[MAX_HITS];
+    private final Material[] hitMaterials = new Material[MAX_HITS];
+    private int hitCount;
+    private boolean rolled;
+    private float rollLen2;
+    private Material rollMaterial;
+    private boolean stopped;
+    private boolean solvedEvent;
+    
+    WorldSnapshot() {
+    }
+    
+    /**
+     * Writes the marble position interpolated towards the present into the
+     * out vector.
+     * 
+     * @param  now the current time as per {@link System#nanoTime()}
+     * @param  stepNanos the length of a physics step in nanoseconds
+     * @param  out the vector receiving the position
+     * @return the out vector
+     */
+    public Vector2 getMarblePosition(long now, long stepNanos, Vector2 out) {
+        float alpha = MathUtils.clamp((float) (now - time) / stepNanos, 0.0f, 1.0f);
+        return out.set(prevMarbleX + (marbleX - prevMarbleX) * alpha,
+                prevMarbleY + (marbleY - prevMarbleY) * alpha);
+    }
+    
+    /** Returns true if the marble was in the maze. */
+    public boolean isMarbleInMaze() {
+        return inMaze;
+    }
+    
+    /** Returns true if the maze had been solved. */
+    public boolean isSolved() {
+        return solved;
+    }
+    
+    /** Returns true if hit, stop or solved events are carried. */
+    boolean hasDiscreteEvents() {
+        return hitCount > 0 || stopped || solvedEvent;
+    }
+    
+    /** Returns true if a roll event is carried. */
+    boolean hasRolled() {
+        return rolled;
+    }
+    
+    /** Sends the carried events to the specified listeners. */
+    void dispatch(List<GameWorldListener> listeners) {
+        for (int i = 0; i < listeners.size(); ++i) {
+            GameWorldListener listener = listeners.get(i);
+            for (int j = 0; j < hitCount; ++j) {
+                listener.marbleHit(hitImpulses[j], hitMaterials[j]);
+            }
+            if (rolled) {
+                listener.marbleRoll(rollLen2, rollMaterial);
+            }
+            if (stopped) {
+                listener.marbleStop();
+            }
+            if (solvedEvent) {
+                listener.mazeSolved();
+            }
+        }
+    }
+    
+    void setState(Vector2 prevMarblePosition, Vector2 marblePosition,
+            long time, boolean inMaze, boolean solved) {
+        
+        prevMarbleX = prevMarblePosition.x;
+        prevMarbleY = prevMarblePosition.y;
+        marbleX = marblePosition.x;
+        marbleY = marblePosition.y;
+        this.time = time;
+        this.inMaze = inMaze;
+        this.solved = solved;
+    }
+    
+    /** Puts the marble at the specified position with no motion to blend. */
+    void reset(Vector2 marblePosition, boolean inMaze, boolean solved) {
+        setState(marblePosition, marblePosition, 0L, inMaze, solved);
+        clearEvents();
+    }
+    
+    void clearEvents() {
+        hitCount = 0;
+        rolled = false;
+        stopped = false;
+        solvedEvent = false;
+    }
+    
+    /** Adds the events of a later snapshot after the ones carried here. */
+    void appendEvents(WorldSnapshot later) {
+        for (int i = 0; i < later.hitCount; ++i) {
+            addHit(later.hitImpulses[i], later.hitMaterials[i]);
+        }
+        if (later.rolled) {
+            addRoll(later.rollLen2, later.rollMaterial);
+        }
+        if (later.stopped) {
+            addStop();
+        }
+        if (later.solvedEvent) {
+            addSolved();
+        }
+    }
+    
+    void addHit(float impulse, Material material) {
+        if (hitCount < MAX_HITS) {
+            hitImpulses[hitCount] = impulse;
+            hitMaterials[hitCount] = material;
+            ++hitCount;
+        }
+    }
+    
+    void addRoll(float len2, Material material) {
+        rolled = true;
+        stopped = false;
+        rollLen2 = len2;
+        rollMaterial = material;
+    }
+    
+    void addStop() {
+        rolled = false;
+        stopped = true;
+    }
+    
+    void addSolved() {
+        solvedEvent = true;
+    }
+}
@@ -0,0 +1,27 @@
+package com.mygdx.hiddenmarble.world;
+
+/** Counters read from a {@link GameWorld} for profiling. */
+public class WorldStats {
+    /** Physics steps taken since the world was created. */
+    public long stepCount;
+    /**
+     * Updates since the world was created in which steps were dropped
+     * because the game fell too far behind.
+     */
+    public long clampCount;
+    /** The number of Box2D bodies. */
+    public int bodyCount;
+    /** The number of Box2D fixtures. */
+    public int fixtureCount;
+    /** The number of Box2D contacts, touching or not. */
+    public int contactCount;
+    
+    /** Copies the counters of the specified stats. */
+    public void set(WorldStats stats) {
+        stepCount = stats.stepCount;
+        clampCount = stats.clampCount;
+        bodyCount = stats.bodyCount;
+        fixtureCount = stats.fixtureCount;
+        contactCount = stats.contactCount;
+    }
+}